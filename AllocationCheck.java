@@ -0,0 +1,154 @@
+import ru.spbstu.pipeline.RC;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Класс проверки повторного использования буферов порций.
+//Для каждого режима исполнения конвейер собирается один раз и несколько раз прогоняет многопорционный файл.
+//Буферов в работе одновременно не может быть больше, чем вмещают очереди связей и кольцо параллельного модуля,
+//плюс по одному у каждого модуля и один у модуля чтения для следующей порции; столько и может выделить пул за все запуски.
+//Проверка завершается с ошибкой, если выделено больше, то есть буферы выделяются на порции, а не переиспользуются.
+//Запуск: java AllocationCheck [размер входа, МБ]
+
+public class AllocationCheck {
+    private final static int INPUT_SIZE = 16;   // - размер входного файла по умолчанию, МБ
+    private final static int ROUNDS = 6;    // - количество запусков конвейера
+    private final static int SIZE_TO_READ = 16 * 1024;  // - размер порции чтения
+    private final static int SIZE_TO_WRITE = 64 * 1024; // - размер буфера записи
+    private final static int SHIFT_AMOUNT = 3;  // - величина сдвига
+    private final static int QUEUE_SIZE = 4;    // - размер очереди связи в многопоточном режиме
+    private final static int WORKERS = 2;   // - количество копий модуля обработки в параллельном режиме
+    private final static int STAGES = 3;    // - количество модулей конвейера
+    private final static String[] ENGINES = {"sync", "threaded", "parallel"};  // - проверяемые режимы исполнения
+
+    private static File dir;    // - рабочий каталог
+    private static File input;  // - входной файл
+    private static byte[] expected; // - эталонный результат сдвига входного файла
+
+    //Запись файла из строк вида "ТОКЕН = значения"
+
+    private static String writeConfig(String name, String... lines) throws IOException {
+        File file = new File(dir, name);
+        try (FileWriter writer = new FileWriter(file)) {
+            for (String line : lines)
+                writer.write(line + System.lineSeparator());
+        }
+        return file.getPath();
+    }
+
+    //Создание синтетического входного файла и эталонного результата
+
+    private static void generate(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        input = new File(dir, "in.bin");
+        try (FileOutputStream fos = new FileOutputStream(input)) {
+            fos.write(data);
+        }
+        new ShiftKernel.Scalar(ShiftKernel.toRotation(SHIFT_AMOUNT, true)).shift(data, 0, size);
+        expected = data;
+    }
+
+    //Создание конфигов менеджера и модулей для режима исполнения
+
+    private static String configure(String engine, File output) throws IOException {
+        String reader = writeConfig(engine + ".reader.cfg", "SIZE_TO_READ = " + SIZE_TO_READ, "TYPE = BYTE");
+        String executor = writeConfig(engine + ".executor.cfg", "SHIFT_AMOUNT = " + SHIFT_AMOUNT,
+                "SHIFT_DIRECTION = left", "TYPE = BYTE");
+        String writer = writeConfig(engine + ".writer.cfg", "SIZE_TO_WRITE = " + SIZE_TO_WRITE, "TYPE = BYTE");
+        return writeConfig(engine + ".manager.cfg", "READER_CONFIG = " + reader, "EXECUTOR_CONFIG = " + executor,
+                "WRITER_CONFIG = " + writer, "INPUT_FILE = " + input.getPath(), "OUTPUT_FILE = " + output.getPath(),
+                "READER_NAME = Reader", "EXECUTOR_NAME = Executor", "WRITER_NAME = Writer",
+                "ORDER = Reader Executor Writer", "ENGINE = " + engine, "QUEUE_SIZE = " + QUEUE_SIZE,
+                "WORKERS = " + WORKERS);
+    }
+
+    //Наибольшее количество буферов в работе одновременно для режима исполнения
+
+    private static long bound(String engine) {
+        long res = STAGES + 1;  // - порция у каждого модуля и следующая порция модуля чтения
+        if (engine.equals("threaded"))
+            res += (long) (STAGES - 1) * QUEUE_SIZE;    // - очереди связей между модулями
+        if (engine.equals("parallel"))
+            res += (long) WORKERS * ParallelStage.CHUNKS_PER_WORKER;    // - кольцо упорядочивания
+        return res;
+    }
+
+    //Проверка режима исполнения; false - ошибка конвейера, неверный результат или выделений больше границы
+
+    private static boolean check(String engine) throws IOException {
+        File output = new File(dir, engine + ".out");
+        Manager manager = new Manager();
+        RC code = manager.setConfig(configure(engine, output));
+        if (code == RC.CODE_SUCCESS)
+            code = manager.setPipeline();
+        for (int i = 0; i < ROUNDS && code == RC.CODE_SUCCESS; i++) {
+            if (i > 0)  // - повторный запуск того же конвейера с тем же пулом
+                code = manager.reuse(input.getPath(), output.getPath());
+            if (code == RC.CODE_SUCCESS)
+                code = manager.run();
+            if (code == RC.CODE_SUCCESS && !Arrays.equals(Files.readAllBytes(output.toPath()), expected)) {
+                System.err.println(engine + ": output differs from the expected one");
+                return false;
+            }
+        }
+        if (code != RC.CODE_SUCCESS || manager.getChunkPool() == null) {
+            System.err.println(engine + ": pipeline failed with " + code);
+            return false;
+        }
+        long allocated = manager.getChunkPool().getAllocated();
+        long bound = bound(engine);
+        long chunks = (input.length() + SIZE_TO_READ - 1) / SIZE_TO_READ * ROUNDS;
+        System.out.println(String.format("%-10s %10d %10d %10d%s", engine, allocated, bound, chunks,
+                allocated > bound ? "  ALLOCATING" : ""));
+        return allocated <= bound;
+    }
+
+    //Удаление рабочего каталога
+
+    private static void cleanUp() {
+        File[] files = dir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        dir.delete();
+    }
+
+    public static void main(String[] args) {    // - точка входа
+        if (args.length > 1) {  // - обработка случая неверного количества переданных аргументов
+            System.err.println("Wrong number of arguments!");
+            System.exit(2);
+        }
+        int size = INPUT_SIZE;
+        try {
+            if (args.length > 0)
+                size = Integer.parseInt(args[0]);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid arguments!");
+            System.exit(2);
+        }
+        Logger.getLogger("").setLevel(Level.WARNING);   // - отключение информационных сообщений конвейера
+
+        boolean isFailed = false;
+        try {
+            dir = Files.createTempDirectory("allocation").toFile();
+            generate(size * 1024 * 1024);
+            System.out.println(String.format("%-10s %10s %10s %10s", "engine", "allocated", "bound", "chunks"));
+            for (String engine : ENGINES)
+                isFailed |= !check(engine);
+            cleanUp();
+        } catch (IOException e) {   // - обработка исключения
+            System.err.println("Allocation check failed: " + e.getMessage());
+            System.exit(2);
+        }
+        if (isFailed)
+            System.exit(1);
+    }
+}
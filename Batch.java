@@ -0,0 +1,166 @@
+import ru.spbstu.pipeline.RC;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+
+//Класс пакетного режима: выполнение множества заданий конвейера в одной JVM.
+//Задания берутся из списка, каждое строкой "конфиг_менеджера входной_файл выходной_файл"; пустые строки и строки с # пропускаются.
+//Каждое задание собирает собственный менеджер и выполняется в виртуальном потоке, если они поддерживаются JVM,
+//иначе в обычном; количество одновременно выполняемых заданий ограничено.
+//Запуск: java Batch <файл списка заданий> [количество одновременных заданий [файл кэша разобранных конфигов]]
+
+public class Batch {
+    private final static String logConfig = "log.config";   // - имя конфигурационного файла для логгера
+    private final static int CONCURRENCY = 16;  // - количество одновременных заданий по умолчанию
+    private final static String COMMENT = "#";  // - начало строки комментария в списке заданий
+
+    //Внутренний класс задания
+
+    private static class Job implements Runnable {
+        private final int number;   // - номер задания в списке
+        private final String configFileName;    // - конфиг менеджера
+        private final String inputFileName; // - входной файл
+        private final String outputFileName;    // - выходной файл
+        private final Semaphore permits;    // - ограничение количества одновременных заданий
+
+        private volatile RC code;   // - код завершения задания
+        private volatile long time; // - время выполнения задания, нс
+
+        Job(int number, String configFileName, String inputFileName, String outputFileName, Semaphore permits) {
+            this.number = number;
+            this.configFileName = configFileName;
+            this.inputFileName = inputFileName;
+            this.outputFileName = outputFileName;
+            this.permits = permits;
+        }
+
+        public void run() {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                code = RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+                return;
+            }
+            long start = System.nanoTime();
+            try {
+                Manager manager = new Manager();    // - собственный менеджер задания
+                code = manager.setConfig(configFileName);
+                if (code == RC.CODE_SUCCESS)
+                    code = manager.setFiles(inputFileName, outputFileName);
+                if (code == RC.CODE_SUCCESS)
+                    code = manager.setPipeline();
+                if (code == RC.CODE_SUCCESS)
+                    code = manager.run();
+            } catch (RuntimeException e) {  // - ошибка задания не прерывает остальные задания
+                code = RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+            } finally {
+                time = System.nanoTime() - start;
+                permits.release();
+            }
+        }
+    }
+
+    //Создание исполнителя с виртуальным потоком на задание, при их отсутствии в JVM - с обычными потоками
+
+    private static ExecutorService newExecutorService() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {  // - виртуальные потоки недоступны
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    //Чтение списка заданий
+
+    private static List<Job> readManifest(String manifestFileName, Semaphore permits) throws IOException {
+        List<Job> res = new ArrayList<Job>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(manifestFileName))) {
+            String line;
+            int number = 0;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith(COMMENT))
+                    continue;
+                String[] words = line.split("\\s+");
+                number++;
+                if (words.length != 3) {
+                    System.err.println("Wrong job description in line: " + line);
+                    return null;
+                }
+                res.add(new Job(number, words[0], words[1], words[2], permits));
+            }
+        }
+        return res;
+    }
+
+    public static void main(String[] args) {    // - точка входа
+        try {    //Применение конфига к логгеру:
+            LogManager.getLogManager().readConfiguration(new FileInputStream(logConfig));
+        } catch (Exception e) {   // - обработка возникающих исключений
+            System.err.println(logConfig + " is unavailable!");
+            return;
+        }
+        if (args.length < 1 || args.length > 3) {   // - обработка случая неверного количества переданных аргументов
+            System.err.println("Wrong number of arguments!");
+            return;
+        }
+        int concurrency = CONCURRENCY;
+        if (args.length > 1) {
+            try {
+                concurrency = Integer.parseInt(args[1]);
+            } catch (NumberFormatException e) {
+                concurrency = 0;
+            }
+            if (concurrency < 1) {
+                System.err.println("Invalid number of concurrent jobs!");
+                return;
+            }
+        }
+        if (args.length > 2)    // - подключение кэша разобранных конфигов
+            PlanCache.load(args[2]);
+        Semaphore permits = new Semaphore(concurrency);
+        List<Job> jobs;
+        try {
+            jobs = readManifest(args[0], permits);
+        } catch (IOException e) {   // - обработка исключения
+            System.err.println(args[0] + " is unavailable!");
+            return;
+        }
+        if (jobs == null)
+            return;
+
+        long start = System.nanoTime();
+        ExecutorService service = newExecutorService();
+        for (Job job : jobs)
+            service.execute(job);
+        service.shutdown();
+        try {
+            while (!service.awaitTermination(1, TimeUnit.MINUTES)) ;  // - ожидание завершения всех заданий
+        } catch (InterruptedException e) {
+            System.err.println("Batch is interrupted!");
+            return;
+        }
+
+        PlanCache.save();
+        int failed = 0;
+        for (Job job : jobs) {  // - отчет о заданиях в порядке списка
+            System.out.println(String.format("%d\t%s\t%s -> %s\t%s\t%d ms", job.number, job.configFileName,
+                    job.inputFileName, job.outputFileName, job.code, job.time / 1000000));
+            if (job.code != RC.CODE_SUCCESS)
+                failed++;
+        }
+        System.out.println(String.format("%d jobs, %d failed, %d ms", jobs.size(), failed,
+                (System.nanoTime() - start) / 1000000));
+        if (failed > 0)
+            System.exit(1);
+    }
+}
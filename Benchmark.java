@@ -0,0 +1,554 @@
+import ru.spbstu.pipeline.*;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+//Класс микротестов производительности модулей конвейера, посредников и преобразований типов.
+//Каждый тест прогревается, затем выполняется несколько измерительных итераций фиксированной длительности;
+//выводятся пропускная способность, объем памяти, выделенной потоком теста на операцию, и работа сборщика мусора.
+//Результаты ориентировочные: это не JMH, все тесты выполняются в одном процессе друг за другом без изоляции форками,
+//поэтому на них влияют профиль JIT и состояние кучи, оставшиеся от предыдущих тестов, а прогрев лишь сокращает этот эффект.
+//Для сравнения изменений их следует повторять несколько раз и запускать отдельные тесты фильтром в новом процессе.
+//Запуск: java -Xmx2g Benchmark [фильтр [длительность итерации, мс]], порции по 16 МБ требуют увеличенной кучи
+
+public class Benchmark {
+    private final static Logger LOGGER = Logger.getLogger(Benchmark.class.getName());   // - логгер модулей под тестом
+
+    private final static int[] SIZES = {1, 16, 256, 4 * 1024, 64 * 1024, 1024 * 1024, 16 * 1024 * 1024};  // - размеры порций
+    private final static TYPE[] TYPES = {TYPE.BYTE, TYPE.SHORT, TYPE.CHAR};  // - типы данных посредников
+    private final static String[] DIRECTIONS = {"left", "right"};  // - направления сдвига
+    private final static int SHIFT_AMOUNT = 3;  // - величина сдвига
+    private final static int WRITE_SIZE = 64 * 1024;   // - размер буфера модуля записи
+    private final static long FILE_SIZE = 16 * 1024 * 1024; // - максимальный размер входного файла модуля чтения
+    private final static int FILE_CHUNKS = 4096;    // - максимальное количество порций во входном файле
+    private final static int WARMUP_ITERATIONS = 3; // - количество итераций прогрева
+    private final static int ITERATIONS = 5;    // - количество измерительных итераций
+    private final static String NULL_DEVICE = "/dev/null";  // - устройство для записи без обращения к диску
+
+    private static long iterationTime = 200 * 1000000L; // - длительность итерации, нс
+    private static long sink;   // - приемник результатов, не позволяющий компилятору удалить вычисления
+
+    //Внутренний класс теста, операция которого возвращает количество обработанных байтов
+
+    private abstract static class Case {
+        private final String name;  // - название теста
+        private final String params;    // - параметры теста
+        protected final int size;   // - размер порции
+
+        Case(String name, String params, int size) {
+            this.name = name;
+            this.params = params;
+            this.size = size;
+        }
+
+        //Подготовка теста
+
+        RC setUp() throws IOException {
+            return RC.CODE_SUCCESS;
+        }
+
+        //Одна операция теста; отрицательное значение означает ошибку
+
+        abstract long run() throws IOException;
+
+        //Завершение теста
+
+        void tearDown() throws IOException {
+        }
+    }
+
+    //Внутренний класс производителя, отдающего одну и ту же порцию в упакованном виде
+
+    private static class Source implements IReader {
+        protected final TYPE type;  // - тип передаваемых данных
+        protected ByteBuffer chunk; // - передаваемая порция
+        protected boolean isEnd;    // - признак конца данных
+
+        Source(TYPE type, ByteBuffer chunk) {
+            this.type = type;
+            this.chunk = chunk;
+        }
+
+        public RC setProducer(IProducer producer) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setConsumer(IConsumer consumer) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setInputStream(FileInputStream fis) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setConfig(String configFileName) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC execute() {
+            return RC.CODE_SUCCESS;
+        }
+
+        public TYPE[] getOutputTypes() {
+            return new TYPE[]{type};
+        }
+
+        public IMediator getMediator(TYPE type) {
+            final Object[] data = Converter.box(chunk, type);   // - упаковка один раз, передается готовый массив
+            return new IMediator() {
+                public Object getData() {
+                    return isEnd ? null : data;
+                }
+            };
+        }
+    }
+
+    //Внутренний класс производителя, отдающего порцию без упаковки
+
+    private static class PrimitiveSource extends Source implements IPrimitiveProducer {
+        PrimitiveSource(TYPE type, ByteBuffer chunk) {
+            super(type, chunk);
+        }
+
+        public IMediator getPrimitiveMediator(TYPE type) {
+            final Buffer data = Converter.toTyped(chunk, type); // - приведение один раз, передаются копии указателей
+            return new IMediator() {
+                public Object getData() {
+                    return isEnd ? null : data.duplicate();
+                }
+            };
+        }
+
+        public ChunkPool getChunkPool() {
+            return null;
+        }
+    }
+
+    //Внутренний класс потребителя, забирающего данные у посредника без обработки
+
+    private static class Sink implements IWriter {
+        private final TYPE type;    // - запрашиваемый тип данных
+        private IMediator mediator; // - посредник производителя
+        private ChunkPool pool; // - пул, в который возвращаются полученные порции
+
+        Sink(TYPE type) {
+            this.type = type;
+        }
+
+        public RC setProducer(IProducer producer) {
+            if (producer instanceof IPrimitiveProducer) {
+                mediator = ((IPrimitiveProducer) producer).getPrimitiveMediator(type);
+                pool = ((IPrimitiveProducer) producer).getChunkPool();
+            } else
+                mediator = producer.getMediator(type);
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setConsumer(IConsumer consumer) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setOutputStream(FileOutputStream fos) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setConfig(String configFileName) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC execute() {
+            Object data = mediator.getData();
+            if (data instanceof Buffer)
+                sink += ((Buffer) data).remaining();
+            else if (data != null)
+                sink += ((Object[]) data).length;
+            if (pool != null && data instanceof ByteBuffer)
+                pool.release((ByteBuffer) data);
+            return RC.CODE_SUCCESS;
+        }
+    }
+
+    //Создание случайной порции данных
+
+    private static ByteBuffer randomChunk(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return ByteBuffer.wrap(data);
+    }
+
+    //Создание временного конфига из строк вида "ТОКЕН = значения"
+
+    private static String writeConfig(String... lines) throws IOException {
+        File file = File.createTempFile("benchmark", ".cfg");
+        file.deleteOnExit();
+        try (FileWriter writer = new FileWriter(file)) {
+            for (String line : lines)
+                writer.write(line + System.lineSeparator());
+        }
+        return file.getPath();
+    }
+
+    //Тест ядра циклического сдвига, выполняемого модулем обработки
+
+    private static class KernelCase extends Case {
+        private final ShiftKernel kernel;   // - ядро сдвига
+        private byte[] data;    // - сдвигаемые данные
+
+        KernelCase(ShiftKernel kernel, String direction, int size) {
+            super("kernel", kernel.getName() + " " + direction, size);
+            this.kernel = kernel;
+        }
+
+        RC setUp() {
+            data = randomChunk(size).array();
+            return RC.CODE_SUCCESS;
+        }
+
+        long run() {
+            kernel.shift(data, 0, size);
+            return size;
+        }
+
+        void tearDown() {
+            data = null;
+        }
+    }
+
+    //Перечисление преобразований, выполняемых посредниками и модулями при передаче данных
+
+    private enum Conversion {
+        BOX("box"),
+        UNBOX("unbox"),
+        TO_TYPED("toTyped"),
+        TO_BYTES("toBytes");
+
+        private String title;
+
+        Conversion(String title) {
+            this.title = title;
+        }
+    }
+
+    //Тест преобразования порции данных
+
+    private static class ConversionCase extends Case {
+        private final Conversion conversion;    // - преобразование
+        private final TYPE type;    // - тип данных посредника
+        private ByteBuffer chunk;   // - порция байтов
+        private Object boxed;   // - упакованная порция
+        private Buffer typed;   // - порция установленного типа
+
+        ConversionCase(Conversion conversion, TYPE type, int size) {
+            super("convert", conversion.title + " " + type, size);
+            this.conversion = conversion;
+            this.type = type;
+        }
+
+        RC setUp() {
+            chunk = randomChunk(size);
+            boxed = Converter.box(chunk, type);
+            typed = Converter.toTyped(chunk, type);
+            return RC.CODE_SUCCESS;
+        }
+
+        long run() {
+            switch (conversion) {
+                case BOX:
+                    return Converter.box(chunk, type).length;
+                case UNBOX:
+                    return Converter.unbox(boxed, type).remaining();
+                case TO_TYPED:
+                    return Converter.toTyped(chunk, type).remaining();
+                default:
+                    return Converter.toBytes(typed.duplicate(), type).remaining();
+            }
+        }
+
+        void tearDown() {
+            chunk = null;
+            boxed = null;
+            typed = null;
+        }
+    }
+
+    //Тест модуля чтения: чтение файла целиком порциями заданного размера
+
+    private static class ReaderCase extends Case {
+        private final String mode;  // - режим чтения
+        private File input; // - входной файл
+        private Reader reader;  // - модуль чтения
+
+        ReaderCase(String mode, int size) {
+            super("reader", mode, size);
+            this.mode = mode;
+        }
+
+        RC setUp() throws IOException {
+            input = File.createTempFile("benchmark", ".bin");
+            input.deleteOnExit();
+            long length = Math.min(FILE_SIZE, (long) size * FILE_CHUNKS);
+            try (FileOutputStream fos = new FileOutputStream(input)) {
+                ByteBuffer chunk = randomChunk(WRITE_SIZE);
+                for (long written = 0; written < length; written += WRITE_SIZE)
+                    fos.write(chunk.array(), 0, (int) Math.min(WRITE_SIZE, length - written));
+            }
+            reader = new Reader(LOGGER);
+            RC code = reader.setConfig(writeConfig("SIZE_TO_READ = " + size, "TYPE = BYTE", "READ_MODE = " + mode));
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            Sink consumer = new Sink(TYPE.BYTE);
+            code = reader.setConsumer(consumer);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            return consumer.setProducer(reader);
+        }
+
+        long run() throws IOException {
+            try (FileInputStream fis = new FileInputStream(input)) {
+                reader.setInputStream(fis);
+                if (reader.execute() != RC.CODE_SUCCESS)
+                    return -1;
+            }
+            return input.length();
+        }
+
+        void tearDown() {
+            input.delete();
+            reader = null;
+        }
+    }
+
+    //Тест модуля обработки: получение, сдвиг и передача одной порции
+
+    private static class ExecutorCase extends Case {
+        private final String direction; // - направление сдвига
+        private final TYPE type;    // - тип данных посредников
+        private final boolean isBoxed;  // - признак передачи упакованных данных
+        private Executor executor;  // - модуль обработки
+
+        ExecutorCase(String direction, TYPE type, boolean isBoxed, int size) {
+            super("executor", direction + " " + type + (isBoxed ? " boxed" : ""), size);
+            this.direction = direction;
+            this.type = type;
+            this.isBoxed = isBoxed;
+        }
+
+        RC setUp() throws IOException {
+            executor = new Executor(LOGGER);
+            RC code = executor.setConfig(writeConfig("SHIFT_AMOUNT = " + SHIFT_AMOUNT, "SHIFT_DIRECTION = " + direction,
+                    "TYPE = " + type));
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            ByteBuffer chunk = randomChunk(size);
+            Source producer = isBoxed ? new Source(type, chunk) : new PrimitiveSource(type, chunk);
+            Sink consumer = new Sink(type);
+            code = executor.setProducer(producer);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            code = executor.setConsumer(consumer);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            return consumer.setProducer(executor);
+        }
+
+        long run() {
+            if (executor.execute() != RC.CODE_SUCCESS)
+                return -1;
+            return size;
+        }
+
+        void tearDown() {
+            executor = null;
+        }
+    }
+
+    //Тест модуля записи: добавление одной порции в буфер с записью по его заполнению
+
+    private static class WriterCase extends Case {
+        private final String mode;  // - режим записи
+        private final TYPE type;    // - тип данных посредника
+        private Source producer;    // - производитель
+        private Writer writer;  // - модуль записи
+        private File output;    // - выходной файл
+        private FileOutputStream fos;   // - поток записи
+
+        WriterCase(String mode, TYPE type, int size) {
+            super("writer", mode + " " + type, size);
+            this.mode = mode;
+            this.type = type;
+        }
+
+        RC setUp() throws IOException {
+            writer = new Writer(LOGGER);
+            RC code = writer.setConfig(writeConfig("SIZE_TO_WRITE = " + WRITE_SIZE, "TYPE = " + type,
+                    "WRITE_MODE = " + mode));
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            producer = new PrimitiveSource(type, randomChunk(size));
+            code = writer.setProducer(producer);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            output = new File(NULL_DEVICE);
+            if (!output.canWrite()) {   // - запись во временный файл при отсутствии устройства
+                output = File.createTempFile("benchmark", ".bin");
+                output.deleteOnExit();
+            }
+            fos = new FileOutputStream(output);
+            return writer.setOutputStream(fos);
+        }
+
+        long run() {
+            if (writer.execute() != RC.CODE_SUCCESS)
+                return -1;
+            return size;
+        }
+
+        void tearDown() throws IOException {
+            producer.isEnd = true;  // - запись оставшихся данных
+            writer.execute();
+            fos.close();
+            if (!output.getPath().equals(NULL_DEVICE))
+                output.delete();
+            producer = null;
+            writer = null;
+        }
+    }
+
+    //Составление списка всех тестов
+
+    private static List<Case> cases() {
+        List<Case> res = new ArrayList<Case>();
+        for (int size : SIZES) {
+            for (String direction : DIRECTIONS) {
+                int rotation = ShiftKernel.toRotation(SHIFT_AMOUNT, direction.equals("left"));
+                res.add(new KernelCase(new ShiftKernel.Scalar(rotation), direction, size));
+                for (ShiftKernel kernel : ShiftKernel.candidates(rotation))
+                    res.add(new KernelCase(kernel, direction, size));
+            }
+            for (Conversion conversion : Conversion.values())
+                for (TYPE type : TYPES)
+                    res.add(new ConversionCase(conversion, type, size));
+            res.add(new ReaderCase("stream", size));
+            res.add(new ReaderCase("mmap", size));
+            for (String direction : DIRECTIONS)
+                for (TYPE type : TYPES) {
+                    res.add(new ExecutorCase(direction, type, false, size));
+                    res.add(new ExecutorCase(direction, type, true, size));
+                }
+            for (TYPE type : TYPES) {
+                res.add(new WriterCase("sync", type, size));
+                res.add(new WriterCase("behind", type, size));
+            }
+        }
+        return res;
+    }
+
+    //Количество выделенных текущим потоком байтов либо -1 при отсутствии поддержки
+
+    private static long allocatedBytes() {
+        ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (!(bean instanceof com.sun.management.ThreadMXBean))
+            return -1;
+        return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+
+    //Суммарные количество и время сборок мусора
+
+    private static long[] gcTotals() {
+        long[] res = new long[2];
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans()) {
+            res[0] += Math.max(bean.getCollectionCount(), 0);
+            res[1] += Math.max(bean.getCollectionTime(), 0);
+        }
+        return res;
+    }
+
+    //Одна итерация теста: операции повторяются до истечения длительности итерации.
+    //Возвращает количество операций, байтов, время, выделенную память, количество и время сборок мусора
+
+    private static long[] iterate(Case c) throws IOException {
+        long ops = 0, bytes = 0;
+        long[] gc = gcTotals();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime(), time;
+        do {
+            long res = c.run();
+            if (res < 0)
+                return null;
+            bytes += res;
+            ops++;
+            time = System.nanoTime() - start;
+        } while (time < iterationTime);
+        long[] gcEnd = gcTotals();
+        return new long[]{ops, bytes, time, allocated < 0 ? -1 : allocatedBytes() - allocated,
+                gcEnd[0] - gc[0], gcEnd[1] - gc[1]};
+    }
+
+    //Прогрев и измерение теста с выводом строки результата
+
+    private static void measure(Case c) {
+        try {
+            if (c.setUp() != RC.CODE_SUCCESS) {
+                System.err.println(c.name + " " + c.params + " " + c.size + ": setup failed");
+                return;
+            }
+            long[] total = new long[6];
+            for (int i = 0; i < WARMUP_ITERATIONS + ITERATIONS; i++) {
+                long[] res = iterate(c);
+                if (res == null) {
+                    System.err.println(c.name + " " + c.params + " " + c.size + ": operation failed");
+                    c.tearDown();
+                    return;
+                }
+                if (i < WARMUP_ITERATIONS)
+                    continue;
+                for (int j = 0; j < total.length; j++)
+                    total[j] = total[j] < 0 || res[j] < 0 ? -1 : total[j] + res[j];
+            }
+            c.tearDown();
+            double seconds = total[2] / 1e9;
+            System.out.println(String.format("%-9s %-22s %9d %14.1f %10.1f %14.1f %6d %8d", c.name, c.params, c.size,
+                    total[0] / seconds, total[1] / seconds / (1024 * 1024),
+                    total[3] < 0 ? -1.0 : (double) total[3] / total[0], total[4], total[5]));
+        } catch (IOException e) {   // - обработка исключения
+            System.err.println(c.name + " " + c.params + " " + c.size + ": " + e.getMessage());
+        }
+    }
+
+    public static void main(String[] args) {    // - точка входа
+        if (args.length > 2) {  // - обработка случая неверного количества переданных аргументов
+            System.err.println("Wrong number of arguments!");
+            return;
+        }
+        String filter = args.length > 0 ? args[0] : "";
+        if (args.length > 1) {
+            try {
+                iterationTime = Long.parseLong(args[1]) * 1000000L;
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid iteration time!");
+                return;
+            }
+        }
+        LOGGER.setLevel(Level.WARNING); // - отключение информационных сообщений модулей
+        System.out.println("Indicative results: single JVM without fork isolation, not comparable to JMH");
+        System.out.println(String.format("%-9s %-22s %9s %14s %10s %14s %6s %8s", "benchmark", "params", "size",
+                "ops/s", "MB/s", "alloc B/op", "gc", "gc ms"));
+        for (Case c : cases())
+            if ((c.name + " " + c.params + " " + c.size).contains(filter))
+                measure(c);
+        System.out.println("sink " + sink);
+    }
+}
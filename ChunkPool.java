@@ -0,0 +1,54 @@
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+//Класс пула буферов для порций данных, разделяемого модулями конвейера.
+//Буфер берется модулем чтения, изменяется на месте модулем обработки и возвращается в пул модулем записи,
+//поэтому в установившемся режиме новые буферы не выделяются
+
+class ChunkPool {
+    private final static int CAPACITY = 64; // - максимальное количество хранимых свободных буферов
+
+    private final int chunkSize;    // - размер буфера порции
+    private final ArrayBlockingQueue<ByteBuffer> free;  // - свободные буферы
+    private final AtomicLong allocated = new AtomicLong();  // - количество выделенных пулом буферов
+
+    //Конструктор
+
+    public ChunkPool(int chunkSize) {
+        this.chunkSize = chunkSize;
+        free = new ArrayBlockingQueue<ByteBuffer>(CAPACITY);
+    }
+
+    //Получение свободного буфера из пула либо выделение нового при его отсутствии
+
+    public ByteBuffer lease() {
+        ByteBuffer res = free.poll();
+        if (res == null) {
+            res = ByteBuffer.allocate(chunkSize);
+            allocated.incrementAndGet();
+        }
+        res.clear();
+        return res;
+    }
+
+    //Возвращение буфера в пул; буферы чужого размера, а также отображения файла в память не принимаются
+
+    public void release(ByteBuffer buffer) {
+        if (buffer == null || !buffer.hasArray() || buffer.isReadOnly() || buffer.capacity() != chunkSize)
+            return;
+        free.offer(buffer);
+    }
+
+    //Размер буфера порции
+
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    //Количество выделенных пулом буферов
+
+    public long getAllocated() {
+        return allocated.get();
+    }
+}
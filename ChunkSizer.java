@@ -0,0 +1,104 @@
+//Класс подбора размера порции чтения по измеренной пропускной способности конвейера.
+//Размер начинается с минимального и удваивается, пока скорость обработки растет; если рост прекратился,
+//пробуется и уменьшение, после чего лучший размер закрепляется на время и затем проверяется заново
+
+class ChunkSizer {
+    private final static int WINDOW_CHUNKS = 16;    // - количество порций в окне измерения
+    private final static long WINDOW_TIME = 1000000;    // - минимальная длительность окна измерения, нс
+    private final static double TOLERANCE = 0.05;   // - минимальный прирост скорости, считающийся улучшением
+    private final static int SETTLE_WINDOWS = 64;   // - количество окон с закрепленным размером до новой проверки
+
+    private final int min;  // - минимальный размер порции
+    private final int max;  // - максимальный размер порции
+    private volatile int size;  // - текущий размер порции
+
+    private long windowBytes;   // - объем данных в текущем окне
+    private long windowTime;    // - время обработки порций текущего окна, нс
+    private int windowChunks;   // - количество порций в текущем окне
+
+    private int bestSize;   // - лучший найденный размер
+    private double bestRate;    // - скорость при лучшем размере, байт/нс
+    private boolean isGrowing = true;   // - направление проверки: увеличение либо уменьшение
+    private boolean isShrinkTried;  // - признак проверки уменьшения от лучшего размера
+    private int settled;    // - количество оставшихся окон с закрепленным размером
+    private int changes;    // - количество смен закрепленного размера
+
+    //Конструктор
+
+    public ChunkSizer(int min, int max) {
+        this.min = min;
+        this.max = max;
+        size = min;
+        bestSize = min;
+    }
+
+    //Текущий размер порции
+
+    public int getSize() {
+        return size;
+    }
+
+    //Количество смен закрепленного размера
+
+    public int getChanges() {
+        return changes;
+    }
+
+    //Ограничение размера границами
+
+    private int clamp(long value) {
+        return (int) Math.max(min, Math.min(max, value));
+    }
+
+    //Закрепление лучшего размера; возвращает true, если закрепленный размер изменился
+
+    private boolean settle() {
+        boolean isChanged = size != bestSize || changes == 0;
+        size = bestSize;
+        settled = SETTLE_WINDOWS;
+        if (isChanged)
+            changes++;
+        return isChanged;
+    }
+
+    //Учет обработанной порции; возвращает true, если закреплен новый размер порции
+
+    public boolean record(long bytes, long nanos) {
+        windowBytes += bytes;
+        windowTime += nanos;
+        windowChunks++;
+        if (windowChunks < WINDOW_CHUNKS || windowTime < WINDOW_TIME)
+            return false;
+        double rate = (double) windowBytes / windowTime;
+        windowBytes = 0;
+        windowTime = 0;
+        windowChunks = 0;
+
+        if (settled > 0) {  //Закрепленный размер: по истечении срока проверка заново от него
+            if (--settled > 0)
+                return false;
+            bestRate = rate;
+            isGrowing = size < max;
+            isShrinkTried = !isGrowing;
+            size = clamp(isGrowing ? (long) size * 2 : size / 2);
+            return size == bestSize && settle();
+        }
+        if (bestRate == 0 || rate > bestRate * (1 + TOLERANCE)) {   //Улучшение: продолжение в том же направлении
+            bestRate = rate;
+            bestSize = size;
+            int next = clamp(isGrowing ? (long) size * 2 : size / 2);
+            if (next == size)
+                return settle();
+            size = next;
+            return false;
+        }
+        if (!isShrinkTried) {   //Увеличение не помогло: проверка уменьшения от лучшего размера
+            isShrinkTried = true;
+            isGrowing = false;
+            size = clamp(bestSize / 2);
+            if (size != bestSize)
+                return false;
+        }
+        return settle();
+    }
+}
@@ -0,0 +1,228 @@
+import ru.spbstu.pipeline.IProducer;
+import ru.spbstu.pipeline.TYPE;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.nio.ShortBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+//Класс преобразования порций данных между байтовым представлением и типами, передаваемыми посредниками
+
+class Converter {
+    //Перечисление способов передачи порции по связи в порядке возрастания стоимости
+
+    private enum Transport {
+        ZERO_COPY("zero-copy"), // - буфер байтов передается как есть
+        PACKED("packed"),   // - копия по два байта в элементе
+        WIDENED("widened"), // - копия с расширением каждого байта до элемента
+        BOXED_BYTE("boxed"),    // - массив объектов Byte из кэша значений
+        BOXED("boxed"); // - массив объектов Short либо Character
+
+        private String title;
+
+        Transport(String title) {
+            this.title = title;
+        }
+    }
+
+    //Способ передачи данных установленного типа производителем; связь передает порции своего производителя как есть,
+    //поэтому способ определяется по нему
+
+    private static Transport transport(TYPE type, IProducer producer) {
+        if (producer instanceof StageLink && ((StageLink) producer).getProducer() != null)
+            return transport(type, ((StageLink) producer).getProducer());
+        if (!(producer instanceof IPrimitiveProducer))
+            return type == TYPE.BYTE ? Transport.BOXED_BYTE : Transport.BOXED;
+        if (type == TYPE.BYTE)
+            return Transport.ZERO_COPY;
+        return producer instanceof IPackedProducer ? Transport.PACKED : Transport.WIDENED;
+    }
+
+    //Стоимость передачи данных установленного типа производителем: чем меньше, тем меньше копий и объектов
+
+    public static int cost(TYPE type, IProducer producer) {
+        return transport(type, producer).ordinal();
+    }
+
+    //Общие типы производителя и потребителя в порядке возрастания стоимости передачи;
+    //при равной стоимости сохраняется порядок типов производителя
+
+    public static List<TYPE> negotiate(TYPE[] offered, TYPE[] supported, IProducer producer) {
+        List<TYPE> res = new ArrayList<TYPE>();
+        for (TYPE type : offered)
+            for (TYPE one : supported)
+                if (one.equals(type) && !res.contains(type)) {
+                    res.add(type);
+                    break;
+                }
+        res.sort((a, b) -> cost(a, producer) - cost(b, producer));  // - сортировка устойчива
+        return res;
+    }
+
+    //Описание выбора типа для журнала: выбранный тип и отвергнутые варианты со способами передачи
+
+    public static String describe(List<TYPE> candidates, IProducer producer) {
+        StringBuilder res = new StringBuilder();
+        for (int i = 0; i < candidates.size(); i++) {
+            if (i > 0)
+                res.append(i == 1 ? ", rejected " : ", ");
+            res.append(candidates.get(i)).append(" (").append(transport(candidates.get(i), producer).title).append(')');
+        }
+        return res.toString();
+    }
+
+    //Упаковка порции байтов в массив объектов установленного типа
+
+    public static Object[] box(ByteBuffer data, TYPE type) {
+        int from = data.position();
+        Object[] res = null;
+        switch (type) {
+            case BYTE:
+                res = new Byte[data.remaining()];
+                for (int i = 0; i < res.length; i++)
+                    res[i] = (Byte) data.get(from + i);
+                break;
+            case SHORT:
+                res = new Short[data.remaining()];
+                short one;
+                for (int i = 0; i < res.length; i++) {
+                    one = (short) data.get(from + i);
+                    res[i] = (Short) one;
+                }
+                break;
+            case CHAR:
+                res = new Character[data.remaining()];
+                char two;
+                for (int i = 0; i < res.length; i++) {
+                    two = (char) data.get(from + i);
+                    res[i] = (Character) two;
+                }
+                break;
+        }
+        return res;
+    }
+
+    //Распаковка массива объектов установленного типа в порцию байтов
+
+    public static ByteBuffer unbox(Object data, TYPE type) {
+        byte[] res = null;
+        switch (type) {
+            case BYTE:
+                Byte[] bTemp = (Byte[]) data;
+                res = new byte[bTemp.length];
+                for (int i = 0; i < bTemp.length; i++)
+                    res[i] = bTemp[i].byteValue();
+                break;
+            case SHORT:
+                Short[] sTemp = (Short[]) data;
+                res = new byte[sTemp.length];
+                for (int i = 0; i < sTemp.length; i++)
+                    res[i] = sTemp[i].byteValue();
+                break;
+            case CHAR:
+                Character[] cTemp = (Character[]) data;
+                res = new byte[cTemp.length];
+                for (int i = 0; i < cTemp.length; i++)
+                    res[i] = (byte) cTemp[i].charValue();
+                break;
+        }
+        return ByteBuffer.wrap(res);
+    }
+
+    //Представление порции байтов в виде буфера установленного типа без упаковки
+
+    public static Buffer toTyped(ByteBuffer data, TYPE type) {
+        int from = data.position();
+        switch (type) {
+            case SHORT:
+                short[] one = new short[data.remaining()];
+                for (int i = 0; i < one.length; i++)
+                    one[i] = (short) data.get(from + i);
+                return ShortBuffer.wrap(one);
+            case CHAR:
+                char[] two = new char[data.remaining()];
+                for (int i = 0; i < two.length; i++)
+                    two[i] = (char) data.get(from + i);
+                return CharBuffer.wrap(two);
+            default:    // - байты передаются как есть, без копирования
+                return data;
+        }
+    }
+
+    //Приведение буфера установленного типа к порции байтов
+
+    public static ByteBuffer toBytes(Buffer data, TYPE type) {
+        byte[] res;
+        switch (type) {
+            case SHORT:
+                ShortBuffer sTemp = (ShortBuffer) data;
+                res = new byte[sTemp.remaining()];
+                for (int i = 0; i < res.length; i++)
+                    res[i] = (byte) sTemp.get(sTemp.position() + i);
+                return ByteBuffer.wrap(res);
+            case CHAR:
+                CharBuffer cTemp = (CharBuffer) data;
+                res = new byte[cTemp.remaining()];
+                for (int i = 0; i < res.length; i++)
+                    res[i] = (byte) cTemp.get(cTemp.position() + i);
+                return ByteBuffer.wrap(res);
+            default:
+                return (ByteBuffer) data;
+        }
+    }
+
+    //Упаковка порции байтов по два в элемент SHORT или CHAR: порядок байтов прямой (big-endian),
+    //первый байт пары занимает старшую половину элемента. Нечетный последний байт занимает старшую половину
+    //последнего элемента, младшая половина которого заполняется нулем и отбрасывается по длине порции
+
+    public static PackedChunk pack(ByteBuffer data, TYPE type) {
+        ByteBuffer source = data.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int from = data.position();
+        int length = data.remaining();
+        int pairs = length / 2;
+        int size = pairs + length % 2;  // - количество элементов с учетом нечетного остатка
+        if (type == TYPE.CHAR) {
+            char[] res = new char[size];
+            for (int i = 0; i < pairs; i++)
+                res[i] = source.getChar(from + 2 * i);
+            if (size > pairs)
+                res[pairs] = (char) ((source.get(from + length - 1) & 0xFF) << 8);
+            return new PackedChunk(CharBuffer.wrap(res), length);
+        }
+        short[] res = new short[size];
+        for (int i = 0; i < pairs; i++)
+            res[i] = source.getShort(from + 2 * i);
+        if (size > pairs)
+            res[pairs] = (short) (source.get(from + length - 1) << 8);
+        return new PackedChunk(ShortBuffer.wrap(res), length);
+    }
+
+    //Распаковка упакованной порции в буфер байтов; null - буфер выделяется по длине порции
+
+    public static ByteBuffer unpack(PackedChunk packed, ByteBuffer res) {
+        int length = packed.getLength();
+        if (res == null)
+            res = ByteBuffer.allocate(length);
+        res.clear();
+        ByteBuffer target = res.duplicate().order(ByteOrder.BIG_ENDIAN);
+        int pairs = length / 2;
+        if (packed.getData() instanceof CharBuffer) {
+            CharBuffer cTemp = (CharBuffer) packed.getData();
+            for (int i = 0; i < pairs; i++)
+                target.putChar(2 * i, cTemp.get(cTemp.position() + i));
+            if (length % 2 != 0)
+                target.put(length - 1, (byte) (cTemp.get(cTemp.position() + pairs) >> 8));
+        } else {
+            ShortBuffer sTemp = (ShortBuffer) packed.getData();
+            for (int i = 0; i < pairs; i++)
+                target.putShort(2 * i, sTemp.get(sTemp.position() + i));
+            if (length % 2 != 0)
+                target.put(length - 1, (byte) (sTemp.get(sTemp.position() + pairs) >> 8));
+        }
+        res.limit(length);
+        return res;
+    }
+}
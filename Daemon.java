@@ -0,0 +1,208 @@
+import ru.spbstu.pipeline.RC;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+//Класс режима службы: процесс остается запущенным и выполняет задания, появляющиеся в каталоге входящих.
+//Файл задания содержит строки "конфиг_менеджера входной_файл выходной_файл", как список заданий пакетного режима;
+//задание следует создавать под именем, начинающимся с точки, и затем переименовывать, чтобы служба не прочитала его частично.
+//После выполнения файл задания заменяется отчетом <имя>.done либо <имя>.failed, файл stop останавливает службу.
+//Успешно отработавший конвейер сохраняется по конфигу менеджера и используется следующими заданиями с тем же конфигом,
+//пока не изменились файлы конфигов: модули не создаются и не настраиваются заново, а JIT остается прогретым
+
+public class Daemon {
+    private final static Logger LOGGER = Logger.getLogger(Daemon.class.getName()); // - создание логгера
+
+    private final static String STOP = "stop";  // - имя файла остановки службы
+    private final static String DONE = ".done"; // - расширение отчета успешного задания
+    private final static String FAILED = ".failed"; // - расширение отчета задания с ошибками
+    private final static String COMMENT = "#";  // - начало строки комментария в файле задания
+
+    //Внутренний класс собранного конвейера, ожидающего следующего задания
+
+    private static class Pipeline {
+        private final Manager manager;  // - менеджер собранного конвейера
+        private final String stamp; // - время изменения и размеры конфигов при сборке
+
+        Pipeline(Manager manager, String stamp) {
+            this.manager = manager;
+            this.stamp = stamp;
+        }
+    }
+
+    private final File inbox;   // - каталог входящих заданий
+    private final Map<String, Pipeline> pipelines = new HashMap<String, Pipeline>();    // - конвейеры по пути конфига менеджера
+    private int jobs;   // - количество выполненных строк заданий
+    private int reused; // - количество запусков на ранее собранных конвейерах
+
+    //Конструктор
+
+    public Daemon(String inboxName) {
+        inbox = new File(inboxName);
+    }
+
+    //Время изменения и размеры конфигов конвейера для проверки, что они не изменились
+
+    private static String stamp(List<String> configFiles) {
+        StringBuilder res = new StringBuilder();
+        for (String name : configFiles) {
+            File file = new File(name);
+            res.append(file.getAbsolutePath()).append(':').append(file.lastModified()).append(':').append(file.length()).append(';');
+        }
+        return res.toString();
+    }
+
+    //Признак файла, не являющегося заданием: скрытые, временные файлы и отчеты
+
+    private static boolean isIgnored(String name) {
+        return name.startsWith(".") || name.endsWith(DONE) || name.endsWith(FAILED);
+    }
+
+    //Выполнение одной строки задания на сохраненном либо новом конвейере
+
+    private RC runLine(String configFileName, String inputFileName, String outputFileName, StringBuilder report) {
+        long start = System.nanoTime();
+        String key = new File(configFileName).getAbsolutePath();
+        Pipeline pipeline = pipelines.remove(key);  // - конвейер занят заданием до его успешного завершения
+        Manager manager;
+        RC code;
+        boolean isWarm = pipeline != null && pipeline.stamp.equals(stamp(pipeline.manager.getConfigFiles()));
+        try {
+            if (isWarm) {
+                manager = pipeline.manager;
+                code = manager.reuse(inputFileName, outputFileName);
+            } else {
+                manager = new Manager();
+                code = manager.setConfig(configFileName);
+                if (code == RC.CODE_SUCCESS)
+                    code = manager.setFiles(inputFileName, outputFileName);
+                if (code == RC.CODE_SUCCESS)
+                    code = manager.setPipeline();
+            }
+            String configStamp = stamp(manager.getConfigFiles());
+            if (code == RC.CODE_SUCCESS)
+                code = manager.run();
+            if (code == RC.CODE_SUCCESS && manager.isReusable())    // - после ошибки конвейер собирается заново
+                pipelines.put(key, new Pipeline(manager, configStamp));
+        } catch (RuntimeException e) {  // - ошибка задания не останавливает службу
+            code = RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        jobs++;
+        if (isWarm)
+            reused++;
+        report.append(String.format("%s\t%s -> %s\t%s\t%d ms\t%s%n", configFileName, inputFileName, outputFileName,
+                code, (System.nanoTime() - start) / 1000000, isWarm ? "warm" : "cold"));
+        return code;
+    }
+
+    //Выполнение файла задания и замена его отчетом
+
+    private void runJob(File job) {
+        StringBuilder report = new StringBuilder();
+        boolean isFailed = false;
+        try (BufferedReader reader = new BufferedReader(new FileReader(job))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith(COMMENT))
+                    continue;
+                String[] words = line.split("\\s+");
+                if (words.length != 3) {
+                    report.append("Wrong job description in line: ").append(line).append(System.lineSeparator());
+                    isFailed = true;
+                    continue;
+                }
+                if (runLine(words[0], words[1], words[2], report) != RC.CODE_SUCCESS)
+                    isFailed = true;
+            }
+        } catch (IOException e) {   // - файл задания удален или недоступен
+            LOGGER.severe("Job \"" + job.getName() + "\" is unavailable");
+            return;
+        }
+        File result = new File(inbox, job.getName() + (isFailed ? FAILED : DONE));
+        try (FileWriter writer = new FileWriter(result)) {
+            writer.write(report.toString());
+        } catch (IOException e) {   // - обработка исключения
+            LOGGER.severe("Couldn't write report of job \"" + job.getName() + "\"");
+        }
+        if (!job.delete())
+            LOGGER.severe("Couldn't remove job \"" + job.getName() + "\"");
+        LOGGER.info("Job \"" + job.getName() + "\" is " + (isFailed ? "failed" : "done"));
+    }
+
+    //Выполнение всех заданий каталога в порядке имен; false - получена команда остановки
+
+    private boolean scan() {
+        String[] names = inbox.list();
+        if (names == null)
+            return true;
+        Arrays.sort(names);
+        for (String name : names) {
+            File file = new File(inbox, name);
+            if (name.equals(STOP)) {
+                file.delete();
+                return false;
+            }
+            if (!isIgnored(name) && file.isFile())
+                runJob(file);
+        }
+        return true;
+    }
+
+    //Цикл службы: выполнение уже лежащих заданий и ожидание новых до появления файла остановки
+
+    public RC run() {
+        if (!inbox.isDirectory()) {
+            LOGGER.severe("Inbox \"" + inbox + "\" is not a directory");
+            return RC.CODE_INVALID_ARGUMENT;
+        }
+        try (WatchService watcher = FileSystems.getDefault().newWatchService()) {
+            inbox.toPath().register(watcher, StandardWatchEventKinds.ENTRY_CREATE);
+            LOGGER.info("Watching inbox \"" + inbox + "\"");
+            boolean isRunning = scan(); // - задания, появившиеся до запуска службы
+            while (isRunning) {
+                WatchKey key = watcher.take();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) { // - события потеряны, просмотр всего каталога
+                        isRunning = scan();
+                        break;
+                    }
+                    String name = ((Path) event.context()).getFileName().toString();
+                    File file = new File(inbox, name);
+                    if (name.equals(STOP)) {
+                        file.delete();
+                        isRunning = false;
+                        break;
+                    }
+                    if (!isIgnored(name) && file.isFile())
+                        runJob(file);
+                }
+                if (!key.reset())   // - каталог удален
+                    break;
+            }
+        } catch (IOException | ClosedWatchServiceException e) {    // - обработка исключения
+            LOGGER.severe("Couldn't watch inbox \"" + inbox + "\"");
+            return RC.CODE_FAILED_TO_READ;
+        } catch (InterruptedException e) {
+            LOGGER.severe("Daemon is interrupted");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        LOGGER.info("Daemon stopped after " + jobs + " jobs, " + reused + " on reused pipelines");
+        return RC.CODE_SUCCESS;
+    }
+}
@@ -1,11 +1,13 @@
 import ru.spbstu.pipeline.*;
 
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.logging.Logger;
 
 //Класс, выполнящий циклический сдвиг
 
-public class Executor implements IExecutor {
+public class Executor implements IExecutor, IPrimitiveProducer, IPackedProducer, IMeasurable, INegotiated {
     private static Logger LOGGER;   // - ссылка логгер
 
     //Перечисление токенов конфига с вложенным строчным представлением
@@ -38,44 +40,43 @@ public class Executor implements IExecutor {
         public Object getData() {
             if (buffer == null)
                 return null;
-            Object[] res = null;
-            switch (consumerType) {
-                case BYTE:
-                    res = new Byte[buffer.length];
-                    for (int i = 0; i < buffer.length; i++)
-                        res[i] = (Byte) buffer[i];
-                    break;
-                case SHORT:
-                    res = new Short[buffer.length];
-                    short one;
-                    for (int i = 0; i < buffer.length; i++) {
-                        one = (short) buffer[i];
-                        res[i] = (Short) one;
-                    }
-                    break;
-                case CHAR:
-                    res = new Character[buffer.length];
-                    char two;
-                    for (int i = 0; i < buffer.length; i++) {
-                        two = (char) buffer[i];
-                        res[i] = (Character) two;
-                    }
-                    break;
-            }
-            LOGGER.info("Data converted into \"" + consumerType.toString() + "\" type");
-            return res;
+            return Converter.box(buffer, consumerType);
         }
     }
 
-    private final static int BYTE_SIZE = 8; // - размер байта в битах
+    //Внутренний класс посредника, передающего данные без упаковки
+
+    public class PrimitiveMediator implements IMediator {
+        public Object getData() {
+            if (buffer == null)
+                return null;
+            return Converter.toTyped(buffer, consumerType);
+        }
+    }
+
+    //Внутренний класс посредника, передающего данные типов SHORT и CHAR по два байта в элементе
+
+    public class PackedMediator implements IMediator {
+        public Object getData() {
+            if (buffer == null)
+                return null;
+            return Converter.pack(buffer, consumerType);
+        }
+    }
 
     private IProducer producer; // - ссылка на производителя
     private IConsumer consumer; // - ссылка на потребителя
     private IMediator mediator; // - ссылка на посредника производителя
+    private boolean isPrimitive;    // - признак передачи данных производителем без упаковки
+    private boolean isPacked;   // - признак передачи данных производителем по два байта в элементе
+    private boolean isPrimitiveConsumer;    // - признак передачи буфера во владение потребителю
+    private ChunkPool pool; // - пул буферов производителя
+    private Metrics.Stage stage = new Metrics().stage("Executor");  // - счетчики модуля
 
     private TYPE[] supportedTypes;  // - массив поддерживаемых этим модулем типов данных
     private TYPE producerType;  // - установленный тип данных для приема от производителя
     private TYPE consumerType;  // - установленный тип данных для передачи потребителю
+    private String negotiation = ""; // - описание выбора типа связи с производителем
 
     private String configFileName;  // - имя файла конфига
     private Map<String, Queue<String>> map; // - словарь с содержимым конфига
@@ -104,7 +105,9 @@ public class Executor implements IExecutor {
 
     private int shiftAmount;    // - величина сдвига
     private ShiftDirection shiftDirection;  // - направление сдвига
-    private byte[] buffer;  // - буфер хранения данных
+    private int rotation;   // - итоговый сдвиг влево в битах
+    private ShiftKernel kernel; // - ядро циклического сдвига
+    private ByteBuffer buffer;  // - буфер хранения данных
 
     //Конструктор
 
@@ -112,17 +115,18 @@ public class Executor implements IExecutor {
         LOGGER = logger;
     }
 
-    //Нахождение пересечения множеств типов производителя и потребителя
+    //Выбор общего типа производителя и потребителя с наименьшей стоимостью передачи
 
     private TYPE setType(TYPE[] types) {
-        TYPE res = null;
-        for (int i = 0; i < producer.getOutputTypes().length; i++)
-            for (int j = 0; j < supportedTypes.length; j++)
-                if (supportedTypes[j].equals(producer.getOutputTypes()[i])) {
-                    res = supportedTypes[j];
-                    break;
-                }
-        return res;
+        List<TYPE> candidates = Converter.negotiate(types, supportedTypes, producer);
+        negotiation = Converter.describe(candidates, producer);
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    //Описание выбранного типа и отвергнутых вариантов
+
+    public String getNegotiation() {
+        return negotiation;
     }
 
     //Установка производителя
@@ -138,7 +142,19 @@ public class Executor implements IExecutor {
             LOGGER.severe("No intersecting types");
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
         }
-        mediator = producer.getMediator(producerType);
+        isPrimitive = producer instanceof IPrimitiveProducer;
+        isPacked = false;
+        if (producerType != TYPE.BYTE && producer instanceof IPackedProducer) { // - два байта в элементе SHORT или CHAR
+            mediator = ((IPackedProducer) producer).getPackedMediator(producerType);
+            isPacked = mediator != null;
+        }
+        if (isPacked)
+            LOGGER.info("Packed " + producerType + " transport is set");
+        else if (isPrimitive)   // - получение посредника без упаковки при его поддержке производителем
+            mediator = ((IPrimitiveProducer) producer).getPrimitiveMediator(producerType);
+        else
+            mediator = producer.getMediator(producerType);
+        pool = isPrimitive ? ((IPrimitiveProducer) producer).getChunkPool() : null;
         LOGGER.info("Producer and Mediator are set successfully");
         return RC.CODE_SUCCESS;
     }
@@ -151,6 +167,8 @@ public class Executor implements IExecutor {
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
         }
         this.consumer = consumer;
+        consumerType = null;    // - тип и владение буфером устанавливает посредник, запрошенный новым потребителем
+        isPrimitiveConsumer = false;
         LOGGER.info("Consumer set successfully");
         return RC.CODE_SUCCESS;
     }
@@ -232,8 +250,12 @@ public class Executor implements IExecutor {
             return code;
         map = syntax.getMap();  // - получение обработанного содержимого конфига
         code = dataValidation();
-        if (code == RC.CODE_SUCCESS)
-            LOGGER.info("\"" + configFileName + "\" config file read successfully");
+        if (code != RC.CODE_SUCCESS)
+            return code;
+        rotation = ShiftKernel.toRotation(shiftAmount, shiftDirection == ShiftDirection.LEFT);
+        kernel = ShiftKernel.select(rotation);  // - выбор ядра сдвига
+        LOGGER.info("\"" + kernel.getName() + "\" shift kernel is selected");
+        LOGGER.info("\"" + configFileName + "\" config file read successfully");
         return code;
     }
 
@@ -249,68 +271,48 @@ public class Executor implements IExecutor {
         return readConfig();
     }
 
-    //Циклический побитовый сдвиг влево
-
-    private byte shiftLeft(byte data) {
-        int x = data & 0xFF;
-        int y = shiftAmount % BYTE_SIZE;
-        return (byte) ((x << y) | (x >> (BYTE_SIZE - y)));
-    }
-
-    //Циклический побитовый сдвиг вправо
-
-    private byte shiftRight(byte data) {
-        int x = data & 0xFF;
-        int y = shiftAmount % BYTE_SIZE;
-        return (byte) ((x >> y) | (x << (BYTE_SIZE - y)));
-    }
-
     //Метод, производящий циклический побитовый сдвиг
 
-    private byte[] doShift() {
+    private ByteBuffer doShift() {
         if (buffer == null) { // - обработка случая достижения конца файла
             LOGGER.info("There is no data to shift");
             return null;
         }
-        switch (shiftDirection) {
-            case LEFT:  //Побитовый сдвиг влево
-                for (int i = 0; i < buffer.length; i++)
-                    buffer[i] = shiftLeft(buffer[i]);
-                break;
-            case RIGHT: //Побитовый сдвиг вправо
-                for (int i = 0; i < buffer.length; i++)
-                    buffer[i] = shiftRight(buffer[i]);
-                break;
-        }
-        LOGGER.info("Data is shifted");
+        int from = buffer.arrayOffset() + buffer.position();
+        kernel.shift(buffer.array(), from, from + buffer.remaining());  // - сдвиг выбранным ядром на месте
         return buffer;
     }
 
     //Метод приведения переданных данных к установленному типу
 
-    private byte[] convertBuffer(Object data) {
+    private ByteBuffer convertBuffer(Object data) {
         if (data == null)
             return null;
-        byte[] res = null;
-        switch (producerType) {
-            case BYTE:
-                Byte[] bTemp = (Byte[]) data;
-                res = new byte[bTemp.length];
-                for (int i = 0; i < bTemp.length; i++)
-                    res[i] = bTemp[i].byteValue();
-                break;
-            case SHORT:
-                Short[] sTemp = (Short[]) data;
-                res = new byte[sTemp.length];
-                for (int i = 0; i < sTemp.length; i++)
-                    res[i] = sTemp[i].byteValue();
-                break;
-            case CHAR:
-                Character[] cTemp = (Character[]) data;
-                res = new byte[cTemp.length];
-                for (int i = 0; i < cTemp.length; i++)
-                    res[i] = (byte) cTemp[i].charValue();
-                break;
+        if (isPacked) { // - распаковка в буфер пула, если порция в нем помещается
+            PackedChunk packed = (PackedChunk) data;
+            if (pool != null && packed.getLength() <= pool.getChunkSize())
+                return Converter.unpack(packed, pool.lease());
+            stage.recordAllocations(1);
+            return Converter.unpack(packed, null);
+        }
+        if (!isPrimitive) {
+            stage.recordAllocations(1);
+            return Converter.unbox(data, producerType);
+        }
+        if (producerType != TYPE.BYTE)
+            stage.recordAllocations(1);
+        ByteBuffer res = Converter.toBytes((Buffer) data, producerType);
+        if (!res.hasArray() || res.isReadOnly()) {  // - копирование данных, которые нельзя изменять на месте
+            ByteBuffer copy;
+            if (pool != null && res.remaining() <= pool.getChunkSize())
+                copy = pool.lease();
+            else {
+                copy = ByteBuffer.allocate(res.remaining());
+                stage.recordAllocations(1);
+            }
+            copy.put(res.duplicate());
+            copy.flip();
+            res = copy;
         }
         return res;
     }
@@ -318,10 +320,15 @@ public class Executor implements IExecutor {
     //Метод, получающий порцию данных у посредника, производящий циклический сдвиг и запускающий своего потребителя
 
     public RC execute() {
+        long start = System.nanoTime();
         buffer = convertBuffer(mediator.getData());
         buffer = doShift();
-        consumer.execute();
-        return RC.CODE_SUCCESS;
+        if (buffer != null)
+            stage.record(buffer.remaining(), System.nanoTime() - start);
+        RC code = consumer.execute();   // - ошибка потребителя передается производителю
+        if (!isPrimitiveConsumer && pool != null)  // - данные скопированы, буфер возвращается в пул
+            pool.release(buffer);
+        return code;
     }
 
     //Метод, возрващающий потребителю поддерживаемые модулем типы данных
@@ -334,6 +341,55 @@ public class Executor implements IExecutor {
 
     public IMediator getMediator(TYPE type) {
         consumerType = type;
+        isPrimitiveConsumer = false;
         return new Mediator();
     }
+
+    //Возвращение экземпляра посредника, передающего данные без упаковки; буфер передается во владение
+    //потребителю только для типа BYTE, для SHORT и CHAR потребитель получает копию, а буфер остается у модуля
+
+    public IMediator getPrimitiveMediator(TYPE type) {
+        consumerType = type;
+        isPrimitiveConsumer = type == TYPE.BYTE;
+        return new PrimitiveMediator();
+    }
+
+    //Возвращение экземпляра посредника упакованных данных; упакованная порция копируется, буфер остается у модуля
+
+    public IMediator getPackedMediator(TYPE type) {
+        consumerType = type;
+        isPrimitiveConsumer = false;
+        return new PackedMediator();
+    }
+
+    //Итоговый сдвиг влево в битах, 0 - модуль не изменяет данные
+
+    public int getRotation() {
+        return rotation;
+    }
+
+    //Объединение со следующим модулем обработки: сдвиги складываются и выполняются за один проход
+
+    public RC fuse(Executor next) {
+        if (next == null) {
+            LOGGER.severe("Null pointer");
+            return RC.CODE_INVALID_ARGUMENT;
+        }
+        rotation = (rotation + next.rotation) % ShiftKernel.BYTE_SIZE;
+        kernel = ShiftKernel.select(rotation);
+        LOGGER.info("\"" + kernel.getName() + "\" shift kernel is selected");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Установка набора счетчиков модуля
+
+    public void setMetrics(Metrics.Stage stage) {
+        this.stage = stage;
+    }
+
+    //Возвращение пула буферов производителя, из которого берутся передаваемые данные
+
+    public ChunkPool getChunkPool() {
+        return pool;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,527 @@
+import ru.spbstu.pipeline.*;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+//Класс адаптеров модулей конвейера к реактивным потокам java.util.concurrent.Flow.
+//Читатель становится издателем, исполнитель - процессором, писатель - подписчиком; элементами потока являются
+//массивы Byte[], Short[] или Character[], которые модули передают через обычных посредников.
+//Данные выдаются только по запросу подписчика: издатель хранит не больше prefetch порций, после чего поток читателя
+//ожидает спроса, поэтому медленный писатель сдерживает чтение. Процессор и подписчик запрашивают сначала prefetch порций,
+//а затем дозапрашивают их пачками по batch штук по мере обработки.
+//Модули настраиваются вызывающей стороной заранее: конфиги и потоки файлов устанавливаются до подписки и закрываются после
+//завершения писателя, который дожидается join() подписчика
+
+public class FlowAdapter {
+    private final static int PREFETCH = 16;  // - количество порций, запрашиваемых заранее, по умолчанию
+    private final static long OFFER_TIMEOUT = 100;  // - время ожидания места для порции, мс
+
+    //Размер пачки дозапроса по умолчанию - три четверти запрошенного заранее
+
+    private static int batchOf(int prefetch) {
+        return Math.max(1, prefetch - prefetch / 4);
+    }
+
+    //Проверка параметров спроса
+
+    private static void checkDemand(int prefetch, int batch) {
+        if (prefetch < 1 || batch < 1 || batch > prefetch)
+            throw new IllegalArgumentException("Invalid prefetch or batch size");
+    }
+
+    //Исключение, передаваемое подписчику при ошибке модуля
+
+    private static Throwable failure(IConfigurable step, RC code) {
+        return new IllegalStateException(step.getClass().getSimpleName() + " failed with " + code);
+    }
+
+    //Внутренний класс подписки, выдающей порции подписчику из ограниченной очереди в пределах его спроса.
+    //Выдача выполняется одним потоком за раз: поток, заставший выдачу другим потоком, только отмечает новую работу
+
+    private static class Emitter implements Flow.Subscription {
+        private final BlockingQueue<Object> queue;  // - порции, ожидающие спроса
+        private final AtomicLong requested = new AtomicLong();  // - невыполненный спрос подписчика
+        private final AtomicInteger work = new AtomicInteger(); // - счетчик запросов на выдачу
+        private final int batch;    // - размер пачки дозапроса у источника
+
+        private volatile Flow.Subscriber<? super Object> subscriber;    // - ссылка на подписчика
+        private volatile Flow.Subscription upstream;    // - подписка источника, null - источник ожидает места сам
+        private volatile boolean isCancelled;   // - признак отмены подписчиком
+        private volatile boolean isCompleted;   // - признак конца потока данных после последней порции
+        private volatile Throwable error;   // - ошибка, передаваемая подписчику
+        private boolean isTerminated;   // - признак переданного подписчику завершения
+        private int freed;  // - количество выданных порций, еще не дозапрошенных у источника
+
+        Emitter(int prefetch, int batch) {
+            queue = new ArrayBlockingQueue<Object>(prefetch);
+            this.batch = batch;
+        }
+
+        //Подключение подписчика
+
+        void subscribe(Flow.Subscriber<? super Object> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+            drain();
+        }
+
+        //Помещение порции в очередь с ожиданием места, пока подписка не отменена; false - подписка отменена
+
+        boolean put(Object item) {
+            try {
+                while (!isCancelled && !queue.offer(item, OFFER_TIMEOUT, TimeUnit.MILLISECONDS)) ;
+            } catch (InterruptedException e) {
+                isCancelled = true;
+            }
+            drain();
+            return !isCancelled;
+        }
+
+        //Конец потока данных, передается подписчику после всех порций очереди
+
+        void complete() {
+            isCompleted = true;
+            drain();
+        }
+
+        //Ошибка источника, передается подписчику без ожидания порций очереди
+
+        void fail(Throwable error) {
+            if (this.error == null)
+                this.error = error;
+            drain();
+        }
+
+        boolean isCancelled() {
+            return isCancelled;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {   // - запрещенный спецификацией запрос
+                fail(new IllegalArgumentException("Non-positive request " + n));
+                return;
+            }
+            long current;
+            do {
+                current = requested.get();
+            } while (current != Long.MAX_VALUE
+                    && !requested.compareAndSet(current, current + n < 0 ? Long.MAX_VALUE : current + n));
+            drain();
+        }
+
+        public void cancel() {
+            isCancelled = true;
+            if (upstream != null)
+                upstream.cancel();
+            drain();
+        }
+
+        //Выдача порций в пределах спроса и передача завершения подписчику
+
+        private void drain() {
+            if (subscriber == null || work.getAndIncrement() != 0)
+                return;
+            int missed = 1;
+            do {
+                long demand = requested.get();
+                long emitted = 0;
+                while (!isTerminated) {
+                    if (isCancelled) {
+                        queue.clear();
+                        isTerminated = true;
+                        break;
+                    }
+                    if (error != null) {
+                        queue.clear();
+                        isTerminated = true;
+                        subscriber.onError(error);
+                        break;
+                    }
+                    boolean isDone = isCompleted;   // - конец потока читается до очереди: все порции уже в ней
+                    if (isDone && queue.isEmpty()) {
+                        isTerminated = true;
+                        subscriber.onComplete();
+                        break;
+                    }
+                    if (emitted == demand)
+                        break;
+                    Object item = queue.poll();
+                    if (item == null)
+                        break;
+                    subscriber.onNext(item);
+                    emitted++;
+                }
+                if (emitted > 0 && demand != Long.MAX_VALUE)
+                    requested.addAndGet(-emitted);
+                if (emitted > 0 && upstream != null) {
+                    freed += emitted;
+                    if (freed >= batch && !isTerminated) {  // - дозапрос освободившегося места у источника
+                        upstream.request(freed);
+                        freed = 0;
+                    }
+                }
+                missed = work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+    }
+
+    //Внутренний класс издателя, читающего данные читателем в собственном потоке
+
+    public static class ReaderPublisher implements Flow.Publisher<Object>, IConsumer {
+        private final Logger logger;    // - ссылка на логгер
+        private final IReader reader;   // - ссылка на читателя
+        private final TYPE type;    // - тип данных порций
+        private final Emitter emitter;  // - подписка единственного подписчика
+        private IMediator mediator; // - посредник читателя
+        private boolean isSubscribed;   // - признак подключенного подписчика
+
+        public ReaderPublisher(Logger logger, IReader reader, TYPE type) {
+            this(logger, reader, type, PREFETCH);
+        }
+
+        public ReaderPublisher(Logger logger, IReader reader, TYPE type, int prefetch) {
+            checkDemand(prefetch, 1);
+            this.logger = logger;
+            this.reader = reader;
+            this.type = type;
+            emitter = new Emitter(prefetch, 1);
+        }
+
+        //Подписка: подключение к читателю и запуск чтения в собственном потоке
+
+        public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+            synchronized (this) {
+                if (isSubscribed) { // - издатель выдает данные одному подписчику
+                    subscriber.onSubscribe(new Emitter(1, 1));
+                    subscriber.onError(new IllegalStateException("Publisher is already subscribed"));
+                    return;
+                }
+                isSubscribed = true;
+            }
+            RC code = reader.setConsumer(this);
+            if (code == RC.CODE_SUCCESS)
+                code = setProducer(reader);
+            if (code != RC.CODE_SUCCESS)
+                emitter.fail(failure(reader, code));
+            emitter.subscribe(subscriber);
+            if (code != RC.CODE_SUCCESS)
+                return;
+            new Thread(() -> {
+                RC res = reader.execute();
+                if (res != RC.CODE_SUCCESS && !emitter.isCancelled()) {
+                    logger.severe("Reader failed in flow");
+                    emitter.fail(failure(reader, res));
+                } else
+                    emitter.complete(); // - на случай, если читатель не передал конец потока
+            }, "flow-" + reader.getClass().getSimpleName()).start();
+        }
+
+        //Установка производителя: посредник запрашивается для типа порций издателя
+
+        public RC setProducer(IProducer producer) {
+            for (TYPE supported : producer.getOutputTypes())
+                if (supported == type) {
+                    mediator = producer.getMediator(type);
+                    return RC.CODE_SUCCESS;
+                }
+            logger.severe("No intersecting types");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+
+        //Передача прочитанной порции в очередь подписки; ожидание места сдерживает читателя
+
+        public RC execute() {
+            Object data = mediator.getData();
+            if (data == null) {
+                emitter.complete();
+                return RC.CODE_SUCCESS;
+            }
+            if (!emitter.put(data)) // - подписка отменена, чтение прекращается
+                return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+            return RC.CODE_SUCCESS;
+        }
+    }
+
+    //Внутренний класс процессора, обрабатывающего порции исполнителем в потоке источника
+
+    public static class ExecutorProcessor implements Flow.Processor<Object, Object>, IProducer, IConsumer {
+        private final Logger logger;    // - ссылка на логгер
+        private final IExecutor executor;   // - ссылка на исполнителя
+        private final TYPE type;    // - тип данных порций на входе и выходе
+        private final int prefetch; // - количество порций, запрашиваемых заранее
+        private final Emitter emitter;  // - подписка подписчика процессора
+
+        private Flow.Subscription upstream; // - подписка у источника
+        private Flow.Subscriber<? super Object> subscriber; // - подписчик процессора
+        private boolean isStarted;  // - признак начального запроса у источника
+        private IMediator mediator; // - посредник исполнителя
+        private Object current; // - текущая порция источника, передаваемая исполнителю
+
+        //Внутренний класс посредника, возвращающего исполнителю текущую порцию источника
+
+        public class Mediator implements IMediator {
+            public Object getData() {
+                return current;
+            }
+        }
+
+        public ExecutorProcessor(Logger logger, IExecutor executor, TYPE type) {
+            this(logger, executor, type, PREFETCH, batchOf(PREFETCH));
+        }
+
+        public ExecutorProcessor(Logger logger, IExecutor executor, TYPE type, int prefetch, int batch) {
+            checkDemand(prefetch, batch);
+            this.logger = logger;
+            this.executor = executor;
+            this.type = type;
+            this.prefetch = prefetch;
+            emitter = new Emitter(prefetch, batch);
+        }
+
+        //Подписка у источника: подключение исполнителя
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            synchronized (this) {
+                if (upstream != null) { // - повторная подписка отклоняется
+                    subscription.cancel();
+                    return;
+                }
+                upstream = subscription;
+            }
+            RC code = executor.setProducer(this);
+            if (code == RC.CODE_SUCCESS)
+                code = executor.setConsumer(this);
+            if (code == RC.CODE_SUCCESS)
+                code = setProducer(executor);
+            if (code != RC.CODE_SUCCESS) {
+                subscription.cancel();
+                emitter.fail(failure(executor, code));
+                return;
+            }
+            emitter.upstream = subscription;
+            start();
+        }
+
+        //Подписка подписчика процессора
+
+        public void subscribe(Flow.Subscriber<? super Object> subscriber) {
+            synchronized (this) {
+                if (this.subscriber != null) {  // - процессор выдает данные одному подписчику
+                    subscriber.onSubscribe(new Emitter(1, 1));
+                    subscriber.onError(new IllegalStateException("Processor is already subscribed"));
+                    return;
+                }
+                this.subscriber = subscriber;
+            }
+            emitter.subscribe(subscriber);
+            start();
+        }
+
+        //Начальный запрос у источника, когда подключены и источник, и подписчик
+
+        private void start() {
+            synchronized (this) {
+                if (isStarted || emitter.upstream == null || subscriber == null)
+                    return;
+                isStarted = true;
+            }
+            upstream.request(prefetch);
+        }
+
+        //Обработка порции источника исполнителем
+
+        public void onNext(Object item) {
+            current = item;
+            executor.execute();
+            current = null;
+        }
+
+        //Ошибка источника передается подписчику процессора
+
+        public void onError(Throwable throwable) {
+            emitter.fail(throwable);
+        }
+
+        //Конец потока источника передается через исполнителя, чтобы он завершил свою работу
+
+        public void onComplete() {
+            current = null;
+            executor.execute();
+            emitter.complete();
+        }
+
+        //Установка производителя: посредник исполнителя запрашивается для типа порций процессора
+
+        public RC setProducer(IProducer producer) {
+            for (TYPE supported : producer.getOutputTypes())
+                if (supported == type) {
+                    mediator = producer.getMediator(type);
+                    return RC.CODE_SUCCESS;
+                }
+            logger.severe("No intersecting types");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+
+        //Процессор является единственным потребителем исполнителя
+
+        public RC setConsumer(IConsumer consumer) {
+            return consumer == executor ? RC.CODE_SUCCESS : RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+
+        //Передача обработанной порции в очередь подписки; места в ней хватает, так как у источника запрошено не больше
+
+        public RC execute() {
+            Object data = mediator.getData();
+            if (data == null)
+                return RC.CODE_SUCCESS;
+            if (!emitter.put(data))
+                return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+            return RC.CODE_SUCCESS;
+        }
+
+        //Метод, возрващающий исполнителю тип данных порций источника
+
+        public TYPE[] getOutputTypes() {
+            return new TYPE[]{type};
+        }
+
+        //Возвращение экземпляра посредника
+
+        public IMediator getMediator(TYPE type) {
+            return new Mediator();
+        }
+    }
+
+    //Внутренний класс подписчика, записывающего порции писателем в потоке источника
+
+    public static class WriterSubscriber implements Flow.Subscriber<Object>, IProducer {
+        private final Logger logger;    // - ссылка на логгер
+        private final IWriter writer;   // - ссылка на писателя
+        private final TYPE type;    // - тип данных порций
+        private final int prefetch; // - количество порций, запрашиваемых заранее
+        private final int batch;    // - размер пачки дозапроса
+        private final CountDownLatch done = new CountDownLatch(1);  // - признак завершения записи
+
+        private Flow.Subscription subscription; // - подписка у источника
+        private Object current; // - текущая порция, передаваемая писателю
+        private int consumed;   // - количество записанных порций, еще не дозапрошенных
+        private volatile RC code = RC.CODE_SUCCESS; // - код завершения записи
+
+        //Внутренний класс посредника, возвращающего писателю текущую порцию
+
+        public class Mediator implements IMediator {
+            public Object getData() {
+                return current;
+            }
+        }
+
+        public WriterSubscriber(Logger logger, IWriter writer, TYPE type) {
+            this(logger, writer, type, PREFETCH, batchOf(PREFETCH));
+        }
+
+        public WriterSubscriber(Logger logger, IWriter writer, TYPE type, int prefetch, int batch) {
+            checkDemand(prefetch, batch);
+            this.logger = logger;
+            this.writer = writer;
+            this.type = type;
+            this.prefetch = prefetch;
+            this.batch = batch;
+        }
+
+        //Подписка у источника: подключение писателя и начальный запрос
+
+        public void onSubscribe(Flow.Subscription subscription) {
+            if (this.subscription != null) {    // - повторная подписка отклоняется
+                subscription.cancel();
+                return;
+            }
+            this.subscription = subscription;
+            RC res = writer.setProducer(this);
+            if (res != RC.CODE_SUCCESS) {
+                subscription.cancel();
+                finish(res);
+                return;
+            }
+            subscription.request(prefetch);
+        }
+
+        //Запись порции и дозапрос пачки, когда записано достаточно порций
+
+        public void onNext(Object item) {
+            if (done.getCount() == 0)
+                return;
+            current = item;
+            RC res = writer.execute();
+            current = null;
+            if (res != RC.CODE_SUCCESS) {
+                subscription.cancel();
+                logger.severe("Writer failed in flow");
+                finish(res);
+                return;
+            }
+            if (++consumed == batch) {
+                consumed = 0;
+                subscription.request(batch);
+            }
+        }
+
+        //Ошибка источника: писатель завершает запись уже полученных данных, код завершения - ошибка
+
+        public void onError(Throwable throwable) {
+            if (done.getCount() == 0)
+                return;
+            logger.severe("Flow failed: " + throwable.getMessage());
+            writer.execute();
+            finish(RC.CODE_FAILED_PIPELINE_CONSTRUCTION);
+        }
+
+        //Конец потока: запись оставшихся данных писателем
+
+        public void onComplete() {
+            if (done.getCount() == 0)
+                return;
+            finish(writer.execute());
+        }
+
+        private void finish(RC code) {
+            this.code = code;
+            done.countDown();
+        }
+
+        //Ожидание завершения записи и получение кода завершения
+
+        public RC join() {
+            try {
+                done.await();
+            } catch (InterruptedException e) {
+                logger.severe("Pipeline thread was interrupted");
+                return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+            }
+            return code;
+        }
+
+        //Подписчик является единственным производителем писателя
+
+        public RC setConsumer(IConsumer consumer) {
+            return consumer == writer ? RC.CODE_SUCCESS : RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+
+        //Метод, возрващающий писателю тип данных порций
+
+        public TYPE[] getOutputTypes() {
+            return new TYPE[]{type};
+        }
+
+        //Возвращение экземпляра посредника
+
+        public IMediator getMediator(TYPE type) {
+            return new Mediator();
+        }
+    }
+}
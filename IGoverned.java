@@ -0,0 +1,6 @@
+//Интерфейс модуля, учитывающего объем данных конвейера в ограничителе памяти.
+//Менеджер выдает ограничитель модулям чтения и записи, если в его конфиге задан бюджет
+
+public interface IGoverned {
+    void setGovernor(MemoryGovernor governor);  // - установка ограничителя объема данных
+}
@@ -0,0 +1,6 @@
+//Интерфейс модуля конвейера, сообщающего метрики своей работы.
+//Менеджер выдает каждому такому модулю собственный набор счетчиков при сборке конвейера
+
+public interface IMeasurable {
+    void setMetrics(Metrics.Stage stage);   // - установка набора счетчиков модуля
+}
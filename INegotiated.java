@@ -0,0 +1,6 @@
+//Интерфейс модуля, выбирающего тип данных связи с производителем по стоимости передачи.
+//Менеджер выводит выбор в журнал один раз при сборке конвейера
+
+public interface INegotiated {
+    String getNegotiation();    // - описание выбранного типа и отвергнутых вариантов
+}
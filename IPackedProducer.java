@@ -0,0 +1,12 @@
+import ru.spbstu.pipeline.IMediator;
+import ru.spbstu.pipeline.IProducer;
+import ru.spbstu.pipeline.TYPE;
+
+//Интерфейс производителя, способного передавать данные типов SHORT и CHAR в упакованном виде.
+//Посредник такого производителя возвращает PackedChunk, в котором каждый элемент содержит два байта порции,
+//поэтому элементов вдвое меньше, чем при расширении каждого байта до отдельного элемента.
+//Порядок байтов и правило нечетного остатка описаны в Converter.pack
+
+public interface IPackedProducer extends IProducer {
+    IMediator getPackedMediator(TYPE type); // - получение посредника упакованных данных, null - упаковка недоступна
+}
@@ -0,0 +1,14 @@
+import ru.spbstu.pipeline.IMediator;
+import ru.spbstu.pipeline.IProducer;
+import ru.spbstu.pipeline.TYPE;
+
+//Интерфейс производителя, способного передавать данные потребителю без упаковки.
+//Посредник такого производителя возвращает ByteBuffer, ShortBuffer или CharBuffer в зависимости от установленного типа,
+//обычный посредник из getMediator по-прежнему возвращает массивы Byte[], Short[] или Character[].
+//Буфер, полученный через такого посредника, переходит во владение потребителя, который возвращает его в пул производителя
+
+public interface IPrimitiveProducer extends IProducer {
+    IMediator getPrimitiveMediator(TYPE type);  // - получение посредника, передающего данные без упаковки
+
+    ChunkPool getChunkPool();   // - получение пула буферов порций, из которого берутся передаваемые данные
+}
@@ -0,0 +1,11 @@
+import ru.spbstu.pipeline.RC;
+
+//Интерфейс модуля, способного работать с частью файла.
+//В режиме разбиения файла менеджер выдает каждой копии конвейера свой диапазон байтов,
+//модуль чтения читает только его, а модуль записи пишет результат по тому же смещению выходного файла
+
+public interface IShardable {
+    long getAlignment();    // - кратность границ диапазона, в байтах
+
+    RC setRange(long position, long length);    // - установка диапазона байтов файла
+}
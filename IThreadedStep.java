@@ -0,0 +1,10 @@
+import ru.spbstu.pipeline.RC;
+
+//Интерфейс элемента конвейера, работающего в собственных потоках.
+//Менеджер запускает такие элементы перед стартом конвейера и дожидается их завершения перед закрытием потоков файлов
+
+public interface IThreadedStep {
+    void start();   // - запуск потоков элемента
+
+    RC join();  // - ожидание завершения потоков и получение кода завершения
+}
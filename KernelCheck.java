@@ -0,0 +1,87 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+//Класс проверки ядер циклического сдвига на случайных данных.
+//Каждое ядро для каждой величины сдвига сравнивается с эталонным побайтовым сдвигом на массивах случайной длины
+//со случайными границами диапазона; байты вне диапазона не должны изменяться.
+//Векторное ядро проверяется, если оно скомпилировано и модуль jdk.incubator.vector подключен.
+//Запуск: java [--add-modules jdk.incubator.vector] KernelCheck [зерно [количество проверок]]
+
+public class KernelCheck {
+    private final static int ROUNDS = 1000; // - количество проверок каждого ядра по умолчанию
+    private final static int MAX_SIZE = 16 * 1024;  // - наибольший размер проверочного массива
+
+    //Эталонный сдвиг байтов массива в диапазоне [from, to) влево на величину от 0 до 7 бит
+
+    private static void reference(byte[] data, int from, int to, int rotation) {
+        for (int i = from; i < to; i++) {
+            int x = data[i] & 0xFF;
+            data[i] = (byte) (x << rotation | x >>> (ShiftKernel.BYTE_SIZE - rotation));
+        }
+    }
+
+    //Проверяемые ядра для заданного сдвига
+
+    private static List<ShiftKernel> kernels(int rotation) {
+        List<ShiftKernel> res = new ArrayList<ShiftKernel>();
+        res.add(new ShiftKernel.Scalar(rotation));
+        if (rotation == 0)
+            res.add(new ShiftKernel.Identity());
+        else
+            res.addAll(Arrays.asList(ShiftKernel.candidates(rotation)));
+        return res;
+    }
+
+    //Проверка ядра; false - результат отличается от эталонного
+
+    private static boolean check(ShiftKernel kernel, int rotation, Random random, int rounds) {
+        for (int round = 0; round < rounds; round++) {
+            byte[] expected = new byte[random.nextInt(MAX_SIZE + 1)];
+            random.nextBytes(expected);
+            byte[] actual = expected.clone();
+            int from = random.nextInt(expected.length + 1);
+            int to = from + random.nextInt(expected.length - from + 1);
+            reference(expected, from, to, rotation);
+            kernel.shift(actual, from, to);
+            if (!Arrays.equals(expected, actual)) {
+                System.err.println(String.format("%s, rotation %d: differs on %d bytes [%d, %d)", kernel.getName(),
+                        rotation, expected.length, from, to));
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public static void main(String[] args) {    // - точка входа
+        if (args.length > 2) {  // - обработка случая неверного количества переданных аргументов
+            System.err.println("Wrong number of arguments!");
+            System.exit(2);
+        }
+        long seed = System.nanoTime();
+        int rounds = ROUNDS;
+        try {
+            if (args.length > 0)
+                seed = Long.parseLong(args[0]);
+            if (args.length > 1)
+                rounds = Integer.parseInt(args[1]);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid arguments!");
+            System.exit(2);
+        }
+        System.out.println("Seed " + seed);
+
+        boolean isFailed = false;
+        Random random = new Random(seed);
+        for (int rotation = 0; rotation < ShiftKernel.BYTE_SIZE; rotation++)
+            for (ShiftKernel kernel : kernels(rotation)) {
+                boolean isValid = check(kernel, rotation, random, rounds);
+                System.out.println(String.format("%-10s rotation %d  %s", kernel.getName(), rotation,
+                        isValid ? "OK" : "FAILED"));
+                isFailed |= !isValid;
+            }
+        if (isFailed)
+            System.exit(1);
+    }
+}
@@ -3,8 +3,12 @@ import ru.spbstu.pipeline.RC;
 import java.io.FileInputStream;
 import java.util.logging.LogManager;
 
+//Точка входа: java Lab_3 <конфиг менеджера> [файл кэша разобранных конфигов]
+//либо в режиме службы: java Lab_3 --daemon <каталог входящих заданий>
+
 public class Lab_3 {
     private final static String logConfig = "log.config";   // - имя конфигурационного файла для логгера
+    private final static String DAEMON = "--daemon";    // - ключ режима службы
 
     public static void main(String[] args) {    // - точка входа
         try {    //Применение конфига к логгеру:
@@ -13,10 +17,20 @@ public class Lab_3 {
             System.err.println(logConfig + " is unavailable!");
             return;
         }
-        if (args.length != 1) { // - обработка случая неверного количества переданных аргументов
+        if (args.length < 1 || args.length > 2) {   // - обработка случая неверного количества переданных аргументов
             System.err.println("Wrong number of arguments!");
             return;
         }
+        if (args[0].equals(DAEMON)) {   // - режим службы с каталогом входящих заданий
+            if (args.length != 2) {
+                System.err.println("Wrong number of arguments!");
+                return;
+            }
+            new Daemon(args[1]).run();
+            return;
+        }
+        if (args.length > 1)    // - подключение кэша разобранных конфигов
+            PlanCache.load(args[1]);
         Manager manager = new Manager();    // - создание экземпляра менеджера
         RC code = manager.setConfig(args[0]);   // - установка конфига менеджера
         if (code != RC.CODE_SUCCESS)    // - прекращение работы в случае возникновения ошибки
@@ -24,6 +38,7 @@ public class Lab_3 {
         code = manager.setPipeline();   // - создание конвеера
         if (code != RC.CODE_SUCCESS)    // - прекращение работы в случае возникновения ошибки
             return;
+        PlanCache.save();   // - сохранение кэша до запуска: конфиги уже разобраны
         manager.run();  // - запуск конвеера
     }
 }
@@ -3,11 +3,20 @@ import ru.spbstu.pipeline.*;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.reflect.Constructor;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Logger;
 
 //Класс менеджера
@@ -26,24 +35,75 @@ public class Manager implements IConfigurable {
         READER_NAME("READER_NAME"),
         EXECUTOR_NAME("EXECUTOR_NAME"),
         WRITER_NAME("WRITER_NAME"),
-        ORDER("ORDER");
+        ORDER("ORDER"),
+        ENGINE("ENGINE", false),
+        QUEUE_SIZE("QUEUE_SIZE", false),
+        WORKERS("WORKERS", false),
+        METRICS_FILE("METRICS_FILE", false),
+        MEMORY_BUDGET("MEMORY_BUDGET", false);
 
         private String title;
+        private boolean isRequired; // - признак обязательного токена
 
         Tokens(String title) {
+            this(title, true);
+        }
+
+        Tokens(String title, boolean isRequired) {
             this.title = title;
+            this.isRequired = isRequired;
         }
     }
 
+    //Перечисление режимов исполнения конвейера с их строчным представлением
+
+    private enum Engine {
+        SYNC("sync"),
+        THREADED("threaded"),
+        PARALLEL("parallel"),
+        SHARDED("sharded");
+
+        private String title;
+
+        Engine(String title) {
+            this.title = title;
+        }
+    }
+
+    private final static int QUEUE_SIZE = 4;    // - размер очереди между модулями по умолчанию
+    private final static Map<String, Constructor<?>> constructors = new ConcurrentHashMap<String, Constructor<?>>(); // - конструкторы модулей по имени класса, общие для менеджеров процесса
+
     private String configFileName;  // - имя файла конфига
 
     private Map<String, Queue<String>> map; // - словарь с содержимым конфига
     private Queue<IPipelineStep> queue; // - очередь модулей конвейера
+    private Engine engine = Engine.SYNC;    // - режим исполнения конвейера
+    private int queueSize = QUEUE_SIZE; // - размер очереди между модулями в многопоточном режиме
+    private int workers = Runtime.getRuntime().availableProcessors();   // - количество копий модуля обработки в параллельном режиме
+    private List<IThreadedStep> threadedSteps = new ArrayList<IThreadedStep>(); // - элементы конвейера, работающие в собственных потоках
 
     private IConsumer starter;  // - стартовый модуль
 
+    private List<IShardable> shardables = new ArrayList<IShardable>();  // - модули, работающие с частью файла
+    private boolean isShardable = true; // - признак поддержки диапазонов всеми модулями чтения и записи
+    private boolean isShard;    // - признак копии конвейера, обрабатывающей часть файла
+    private boolean isTypesLogged;  // - признак выбора типов, уже выведенного в журнал другой копией конвейера
+    private Manager[] shards;   // - копии конвейера в режиме разбиения файла
+    private List<IPipelineStep> plan = new ArrayList<IPipelineStep>();  // - модули собранного конвейера в порядке следования
+    private boolean isPassthrough;  // - признак конвейера, не изменяющего данные
+    private long rangePosition = -1;    // - начало диапазона файла копии конвейера, -1 - весь файл
+    private long rangeLength;   // - длина диапазона файла копии конвейера
+
+    private Metrics metrics = new Metrics();    // - метрики работы конвейера
+    private String metricsFileName; // - имя файла для итоговых метрик
+    private String metricsPrefix = "";  // - префикс имен счетчиков модулей
+    private MemoryGovernor governor;    // - ограничитель объема данных в конвейере, null - без ограничения
+
     private FileInputStream fis;    // - поток чтения
     private FileOutputStream fos;   // - поток записи
+    private IReader reader; // - модуль чтения собранного конвейера
+    private IWriter writer; // - модуль записи собранного конвейера
+    private List<String> configFiles = new ArrayList<String>(); // - конфиги менеджера и модулей собранного конвейера
 
     //Метод проверки количества значений для токенов
 
@@ -56,6 +116,83 @@ public class Manager implements IConfigurable {
             LOGGER.severe("Wrong amount of \"" + Tokens.OUTPUT_FILE.title + "\" values");
             return RC.CODE_CONFIG_SEMANTIC_ERROR;
         }
+        if (map.containsKey(Tokens.ENGINE.title)) { //Установка режима исполнения конвейера
+            Queue<String> values = map.get(Tokens.ENGINE.title);
+            String value = values.peek().toLowerCase();
+            if (values.size() > 1) {
+                LOGGER.severe("Wrong amount of \"" + Tokens.ENGINE.title + "\" values");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+            if (value.equals(Engine.SYNC.title))
+                engine = Engine.SYNC;
+            else if (value.equals(Engine.THREADED.title))
+                engine = Engine.THREADED;
+            else if (value.equals(Engine.PARALLEL.title))
+                engine = Engine.PARALLEL;
+            else if (value.equals(Engine.SHARDED.title))
+                engine = Engine.SHARDED;
+            else {
+                LOGGER.severe("Invalid \"" + Tokens.ENGINE.title + "\" value");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+        }
+        if (map.containsKey(Tokens.QUEUE_SIZE.title)) { //Установка размера очереди между модулями
+            Queue<String> values = map.get(Tokens.QUEUE_SIZE.title);
+            if (values.size() > 1) {
+                LOGGER.severe("Wrong amount of \"" + Tokens.QUEUE_SIZE.title + "\" values");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+            try {
+                queueSize = Integer.parseInt(values.peek());
+            } catch (NumberFormatException e) {
+                queueSize = 0;
+            }
+            if (queueSize < 1) {
+                LOGGER.severe("Invalid \"" + Tokens.QUEUE_SIZE.title + "\" value");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+        }
+        if (map.containsKey(Tokens.METRICS_FILE.title)) {   //Установка файла для итоговых метрик
+            if (map.get(Tokens.METRICS_FILE.title).size() > 1) {
+                LOGGER.severe("Wrong amount of \"" + Tokens.METRICS_FILE.title + "\" values");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+            metricsFileName = map.get(Tokens.METRICS_FILE.title).peek();
+        }
+        if (map.containsKey(Tokens.MEMORY_BUDGET.title)) {  //Установка бюджета объема данных в конвейере
+            Queue<String> values = map.get(Tokens.MEMORY_BUDGET.title);
+            if (values.size() > 1) {
+                LOGGER.severe("Wrong amount of \"" + Tokens.MEMORY_BUDGET.title + "\" values");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+            long budget;
+            try {
+                budget = Long.parseLong(values.peek());
+            } catch (NumberFormatException e) {
+                budget = 0;
+            }
+            if (budget < 1) {
+                LOGGER.severe("Invalid \"" + Tokens.MEMORY_BUDGET.title + "\" value");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+            governor = new MemoryGovernor(budget);
+        }
+        if (map.containsKey(Tokens.WORKERS.title)) {    //Установка количества копий модуля обработки
+            Queue<String> values = map.get(Tokens.WORKERS.title);
+            if (values.size() > 1) {
+                LOGGER.severe("Wrong amount of \"" + Tokens.WORKERS.title + "\" values");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+            try {
+                workers = Integer.parseInt(values.peek());
+            } catch (NumberFormatException e) {
+                workers = 0;
+            }
+            if (workers < 1) {
+                LOGGER.severe("Invalid \"" + Tokens.WORKERS.title + "\" value");
+                return RC.CODE_CONFIG_SEMANTIC_ERROR;
+            }
+        }
         return RC.CODE_SUCCESS;
     }
 
@@ -63,9 +200,13 @@ public class Manager implements IConfigurable {
 
     private RC readConfig() {
         String[] temp = new String[Tokens.values().length]; // - создание массива текстовых представлений токенов для разбора конфига
-        for (int i = 0; i < Tokens.values().length; i++)
+        int required = 0;   // - количество обязательных токенов
+        for (int i = 0; i < Tokens.values().length; i++) {
             temp[i] = Tokens.values()[i].title;
-        Syntax syntax = new Syntax(LOGGER, temp);   // - создание экземпляра класса синтаксической обработки
+            if (Tokens.values()[i].isRequired)
+                required++;
+        }
+        Syntax syntax = new Syntax(LOGGER, temp, required);   // - создание экземпляра класса синтаксической обработки
         syntax.setConfig(configFileName);   // - чтение и парсинг конфига
         RC code = syntax.readConfig();
         if (code != RC.CODE_SUCCESS)
@@ -88,10 +229,43 @@ public class Manager implements IConfigurable {
             return RC.CODE_INVALID_ARGUMENT;
         }
         this.configFileName = configFileName;
+        configFiles.add(configFileName);
         LOGGER.info("\"" + this.configFileName + "\" config file name is set");
         return readConfig();
     }
 
+    //Метод замены входного и выходного файлов из конфига, вызывается после установки конфига
+
+    public RC setFiles(String inputFileName, String outputFileName) {
+        if (inputFileName == null || outputFileName == null) {
+            LOGGER.severe("Null pointer");
+            return RC.CODE_INVALID_ARGUMENT;
+        }
+        if (map == null) {
+            LOGGER.severe("Config is not set");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        Queue<String> input = new LinkedList<String>();
+        input.offer(inputFileName);
+        Queue<String> output = new LinkedList<String>();
+        output.offer(outputFileName);
+        map.put(Tokens.INPUT_FILE.title, input);
+        map.put(Tokens.OUTPUT_FILE.title, output);
+        LOGGER.info("Input and output files are set");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Создание модуля по имени класса
+
+    private static Object newModule(String className) throws ReflectiveOperationException {
+        Constructor<?> constructor = constructors.get(className);
+        if (constructor == null) {
+            constructor = Class.forName(className).getDeclaredConstructor(Logger.class);
+            constructors.put(className, constructor);
+        }
+        return constructor.newInstance(LOGGER);
+    }
+
     //Метод обработки текстовых значений модулей и создания очереди подключения модулей
 
     private RC setQueue() {
@@ -107,7 +281,7 @@ public class Manager implements IConfigurable {
                 try {   //Проверка наличия модуля чтения
                     if (module.equals(map.get(Tokens.READER_NAME.title).peek())) {
                         try {   // - создание модуля чтения
-                            exec = (IReader) Class.forName(map.get(Tokens.READER_NAME.title).remove()).getDeclaredConstructor(Logger.class).newInstance(LOGGER);
+                            exec = (IReader) newModule(map.get(Tokens.READER_NAME.title).remove());
                         } catch (Exception e) {
                             LOGGER.severe("Class not found");
                             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
@@ -124,7 +298,16 @@ public class Manager implements IConfigurable {
                 try {
                     if (module.equals(map.get(Tokens.EXECUTOR_NAME.title).peek())) {
                         try {   // - создание модуля обработки
-                            exec = (IExecutor) Class.forName(map.get(Tokens.EXECUTOR_NAME.title).remove()).getDeclaredConstructor(Logger.class).newInstance(LOGGER);
+                            String executorClass = map.get(Tokens.EXECUTOR_NAME.title).remove();
+                            if (engine == Engine.PARALLEL) {    // - создание копий модуля обработки для параллельного режима
+                                IExecutor[] replicas = new IExecutor[workers];
+                                for (int i = 0; i < workers; i++)
+                                    replicas[i] = (IExecutor) newModule(executorClass);
+                                ParallelStage stage = new ParallelStage(LOGGER, replicas);
+                                threadedSteps.add(stage);
+                                exec = stage;
+                            } else
+                                exec = (IExecutor) newModule(executorClass);
                         } catch (Exception e) {
                             LOGGER.severe("Class not found");
                             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
@@ -141,7 +324,7 @@ public class Manager implements IConfigurable {
                 try {
                     if (module.equals(map.get(Tokens.WRITER_NAME.title).peek())) {
                         try {   // - создание модуля записи
-                            exec = (IWriter) Class.forName(map.get(Tokens.WRITER_NAME.title).remove()).getDeclaredConstructor(Logger.class).newInstance(LOGGER);
+                            exec = (IWriter) newModule(map.get(Tokens.WRITER_NAME.title).remove());
                         } catch (Exception e) {
                             LOGGER.severe("Class not found");
                             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
@@ -165,13 +348,33 @@ public class Manager implements IConfigurable {
         return RC.CODE_SUCCESS;
     }
 
+    //Метод, вставляющий связи с очередями между модулями для многопоточного режима
+
+    private RC setLinks() {
+        Queue<IPipelineStep> linked = new LinkedList<IPipelineStep>();
+        while (!queue.isEmpty()) {
+            linked.offer(queue.remove());
+            if (queue.isEmpty())
+                break;
+            StageLink link = new StageLink(LOGGER, queueSize);  // - связь перед каждым следующим модулем
+            threadedSteps.add(link);
+            linked.offer(link);
+        }
+        queue = linked;
+        LOGGER.info("Pipeline links are set");
+        return RC.CODE_SUCCESS;
+    }
+
     //Метод, устанавливающий конфиг для модуля чтения, открывающий и передающий ему поток чтения
 
     private RC setReader(IReader reader) {
         RC code = RC.CODE_SUCCESS;
 
+        this.reader = reader;
         try {
-            code = reader.setConfig(map.get(Tokens.READER_CONFIG.title).remove());    // - установка соответствующего конфига модулю чтения
+            String readerConfig = map.get(Tokens.READER_CONFIG.title).remove();
+            configFiles.add(readerConfig);
+            code = reader.setConfig(readerConfig);    // - установка соответствующего конфига модулю чтения
         } catch (NoSuchElementException e) {
             LOGGER.severe("Wrong amount of " + Tokens.READER_CONFIG.title + " values");
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
@@ -196,7 +399,9 @@ public class Manager implements IConfigurable {
 
     private RC setExecutor(IExecutor executor) {
         try {
-            return executor.setConfig(map.get(Tokens.EXECUTOR_CONFIG.title).remove());    // - установка соответствующего конфига модулю обработки
+            String executorConfig = map.get(Tokens.EXECUTOR_CONFIG.title).remove();
+            configFiles.add(executorConfig);
+            return executor.setConfig(executorConfig);    // - установка соответствующего конфига модулю обработки
         } catch (NoSuchElementException e) {
             LOGGER.severe("Wrong amount of " + Tokens.EXECUTOR_CONFIG.title + " values");
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
@@ -208,8 +413,13 @@ public class Manager implements IConfigurable {
     private RC setWriter(IWriter writer) {
         RC code = RC.CODE_SUCCESS;
 
+        this.writer = writer;
+        if (writer instanceof IThreadedStep)    // - фоновая запись останавливается после всех связей конвейера
+            threadedSteps.add((IThreadedStep) writer);
         try {
-            code = writer.setConfig(map.get(Tokens.WRITER_CONFIG.title).remove());    // - установка соответствующего конфига модулю записи
+            String writerConfig = map.get(Tokens.WRITER_CONFIG.title).remove();
+            configFiles.add(writerConfig);
+            code = writer.setConfig(writerConfig);    // - установка соответствующего конфига модулю записи
         } catch (NoSuchElementException e) {
             LOGGER.severe("Wrong amount of " + Tokens.WRITER_CONFIG.title + " values");
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
@@ -218,12 +428,16 @@ public class Manager implements IConfigurable {
             return code;
 
         try {
-            fos = new FileOutputStream(map.get(Tokens.OUTPUT_FILE.title).remove()); // - открытие потока записи
+            String outputFileName = map.get(Tokens.OUTPUT_FILE.title).remove();
+            if (isShard)    // - открытие без очистки файла, в который пишут и другие копии конвейера
+                fos = new FileOutputStream(new RandomAccessFile(outputFileName, "rw").getFD());
+            else
+                fos = new FileOutputStream(outputFileName); // - открытие потока записи
             code = writer.setOutputStream(fos); // - передача его в модуль записи
         } catch (NoSuchElementException e) {
             LOGGER.severe("Wrong amount of " + Tokens.OUTPUT_FILE.title + " values");
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
-        } catch (FileNotFoundException e) { // - обработка исключения
+        } catch (IOException e) { // - обработка исключения
             LOGGER.severe("Output stream is invalid");
             return RC.CODE_INVALID_OUTPUT_STREAM;
         }
@@ -235,6 +449,7 @@ public class Manager implements IConfigurable {
     private RC setModules() {
         RC code = RC.CODE_SUCCESS;
         IPipelineStep producer = null, module, consumer;
+        int index = 0;  // - номер модуля на конвейере
         while (true) {
             try {
                 module = queue.remove();    // - извлечение модуля из очереди
@@ -245,16 +460,29 @@ public class Manager implements IConfigurable {
 
                 if (module instanceof IReader)
                     code = setReader((IReader) module);    // - настройка модуля чтения
-                if (module instanceof IExecutor)
+                if (module instanceof IExecutor && !(module instanceof StageLink))
                     code = setExecutor((IExecutor) module); // - настройка модуля обработки
                 if (module instanceof IWriter)   // - настройка модуля записи
                     code = setWriter((IWriter) module);
                 if (code != RC.CODE_SUCCESS)
                     return code;
 
+                if (module instanceof IMeasurable)  // - выдача модулю собственного набора счетчиков
+                    ((IMeasurable) module).setMetrics(metrics.stage(metricsPrefix + index + ":" + module.getClass().getSimpleName()));
+                if (module instanceof IGoverned && governor != null)    // - учет данных модуля в бюджете
+                    ((IGoverned) module).setGovernor(governor);
+                index++;
+                plan.add(module);
+                if (module instanceof IShardable)   // - учет модулей, работающих с частью файла
+                    shardables.add((IShardable) module);
+                else if (module instanceof IReader || module instanceof IWriter)
+                    isShardable = false;
+
                 code = module.setProducer((IProducer) producer);  // - установка производителя
                 if (code != RC.CODE_SUCCESS)
                     return code;
+                if (module instanceof INegotiated && !isTypesLogged)    // - выбранный тип связи и отвергнутые варианты
+                    LOGGER.info((index - 1) + ":" + module.getClass().getSimpleName() + " type: " + ((INegotiated) module).getNegotiation());
                 code = module.setConsumer((IConsumer) consumer);  // - установка потребителя
                 if (code != RC.CODE_SUCCESS)
                     return code;
@@ -268,28 +496,340 @@ public class Manager implements IConfigurable {
         return code;
     }
 
+    //Проверка, что производитель выдает все типы данных, которые выдавал заменяемый им модуль
+
+    private static boolean isReplaceable(IProducer producer, IProducer replaced) {
+        return Arrays.asList(producer.getOutputTypes()).containsAll(Arrays.asList(replaced.getOutputTypes()));
+    }
+
+    //Текстовое представление плана конвейера
+
+    private static String describe(List<IPipelineStep> steps) {
+        StringBuilder res = new StringBuilder();
+        for (IPipelineStep step : steps) {
+            if (res.length() > 0)
+                res.append(" -> ");
+            res.append(step.getClass().getSimpleName());
+            if (step instanceof Executor)
+                res.append("(rotate left ").append(((Executor) step).getRotation()).append(")");
+        }
+        return res.toString();
+    }
+
+    //Оптимизация собранного конвейера: соседние модули сдвига объединяются в один с итоговым сдвигом,
+    //модули с итоговым сдвигом, кратным размеру байта, удаляются, оставшиеся модули связываются заново
+
+    private RC optimizePlan() {
+        String before = describe(plan);
+        List<IPipelineStep> res = new ArrayList<IPipelineStep>();
+        for (IPipelineStep module : plan) { //Объединение соседних модулей сдвига
+            IPipelineStep last = res.isEmpty() ? null : res.get(res.size() - 1);
+            if (module instanceof Executor && last instanceof Executor && isReplaceable((Executor) last, (Executor) module)) {
+                RC code = ((Executor) last).fuse((Executor) module);
+                if (code != RC.CODE_SUCCESS)
+                    return code;
+                continue;
+            }
+            res.add(module);
+        }
+        for (int i = 1; i < res.size() - 1; i++) {  //Удаление модулей, не изменяющих данные
+            IPipelineStep module = res.get(i);
+            if (module instanceof Executor && ((Executor) module).getRotation() == 0
+                    && isReplaceable((IProducer) res.get(i - 1), (Executor) module))
+                res.remove(i--);
+        }
+        if (res.size() == plan.size()) {
+            LOGGER.info("Pipeline plan: " + before);
+            return RC.CODE_SUCCESS;
+        }
+
+        for (int i = 0; i < res.size() - 1; i++) {  //Связывание модулей, ставших соседними
+            IPipelineStep producer = res.get(i), consumer = res.get(i + 1);
+            if (plan.indexOf(consumer) == plan.indexOf(producer) + 1)
+                continue;
+            RC code = producer.setConsumer((IConsumer) consumer);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            code = consumer.setProducer((IProducer) producer);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+        }
+        LOGGER.info("Pipeline plan: " + before + " is optimized to " + describe(res));
+        plan = res;
+        return RC.CODE_SUCCESS;
+    }
+
+    //Метод создания копий конвейера, каждая из которых обрабатывает свой диапазон входного файла,
+    //выровненный по размеру порции, и пишет результат по тому же смещению выходного файла
+
+    private RC setShards() {
+        String inputFileName = map.get(Tokens.INPUT_FILE.title).peek();
+        String outputFileName = map.get(Tokens.OUTPUT_FILE.title).peek();
+        try (RandomAccessFile output = new RandomAccessFile(outputFileName, "rw")) {  // - очистка выходного файла один раз
+            output.setLength(0);
+        } catch (IOException e) {   // - обработка исключения
+            LOGGER.severe("Output stream is invalid");
+            return RC.CODE_INVALID_OUTPUT_STREAM;
+        }
+
+        shards = new Manager[workers];
+        long alignment = 1; // - кратность границ диапазонов
+        for (int i = 0; i < workers; i++) {
+            Manager shard = new Manager();
+            shard.isShard = true;
+            shard.metrics = metrics;    // - общие метрики с раздельными счетчиками копий
+            shard.metricsPrefix = "shard" + i + "/";
+            shard.isTypesLogged = i > 0;    // - копии одинаковы, выбор типов выводит только первая
+            RC code = shard.setConfig(configFileName);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            shard.engine = Engine.SYNC; // - каждая копия работает в своем потоке последовательно
+            if (governor != null)   // - копия получает свою долю бюджета, пик считается по всему файлу
+                shard.governor = new MemoryGovernor(Math.max(1, governor.getBudget() / workers), governor);
+            code = shard.setFiles(inputFileName, outputFileName);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            code = shard.setPipeline();
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            if (!shard.isShardable) {
+                LOGGER.severe("Modules don't support file ranges");
+                return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+            }
+            for (IShardable module : shard.shardables)
+                alignment = Math.max(alignment, module.getAlignment());
+            shards[i] = shard;
+        }
+
+        long length = new File(inputFileName).length();
+        long range = ((length + alignment - 1) / alignment + workers - 1) / workers * alignment;   // - размер диапазона копии
+        for (int i = 0; i < workers; i++) {
+            long position = Math.min(i * range, length);
+            shards[i].rangePosition = position;
+            shards[i].rangeLength = Math.min(range, length - position);
+            for (IShardable module : shards[i].shardables) {
+                RC code = module.setRange(position, shards[i].rangeLength);
+                if (code != RC.CODE_SUCCESS)
+                    return code;
+            }
+        }
+        LOGGER.info("Shards are set");
+        return RC.CODE_SUCCESS;
+    }
+
     //Метод настройки конвеера
 
     public RC setPipeline() {
         RC code = RC.CODE_SUCCESS;
 
+        if (engine == Engine.SHARDED)
+            return setShards(); // - создание копий конвейера для частей файла
+
         code = setQueue(); // - создание очереди
         if (code != RC.CODE_SUCCESS)
             return code;
 
+        if (engine == Engine.THREADED) {
+            code = setLinks();  // - вставка связей между модулями
+            if (code != RC.CODE_SUCCESS)
+                return code;
+        }
+
         code = setModules();    // - "сборка" конвейера
         if (code != RC.CODE_SUCCESS)
             return code;
 
+        if (engine == Engine.SYNC) {
+            code = optimizePlan();  // - объединение и удаление модулей сдвига
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            //Модуль чтения, связанный напрямую с модулем записи, не изменяет данные при любом типе передачи
+            isPassthrough = plan.size() == 2 && plan.get(0) instanceof Reader && plan.get(1) instanceof Writer;
+            if (isPassthrough)
+                LOGGER.info("Pipeline is a passthrough, data will be transferred without buffers");
+        }
+
         return code;
     }
 
+    //Признак конвейера, который можно запускать повторно с другими файлами: копии конвейера
+    //в режиме разбиения файла собираются под диапазоны конкретного входного файла
+
+    public boolean isReusable() {
+        return shards == null && reader != null && writer != null;
+    }
+
+    //Метод, возвращающий конфиги менеджера и модулей собранного конвейера
+
+    public List<String> getConfigFiles() {
+        return configFiles;
+    }
+
+    //Метод подготовки успешно отработавшего конвейера к новому запуску с другими файлами:
+    //модули остаются настроенными, заменяются только потоки чтения и записи
+
+    public RC reuse(String inputFileName, String outputFileName) {
+        if (inputFileName == null || outputFileName == null) {
+            LOGGER.severe("Null pointer");
+            return RC.CODE_INVALID_ARGUMENT;
+        }
+        if (!isReusable()) {
+            LOGGER.severe("Pipeline can't be reused");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        try {
+            fis = new FileInputStream(inputFileName);   // - открытие потока чтения
+        } catch (FileNotFoundException e) { // - обработка исключения
+            LOGGER.severe("Input stream is invalid");
+            return RC.CODE_INVALID_INPUT_STREAM;
+        }
+        try {
+            fos = new FileOutputStream(outputFileName); // - открытие потока записи
+        } catch (FileNotFoundException e) { // - обработка исключения
+            LOGGER.severe("Output stream is invalid");
+            try {
+                fis.close();
+            } catch (IOException ignored) {
+            }
+            return RC.CODE_INVALID_OUTPUT_STREAM;
+        }
+        RC code = reader.setInputStream(fis);
+        if (code == RC.CODE_SUCCESS)
+            code = writer.setOutputStream(fos);
+        if (code == RC.CODE_SUCCESS)
+            LOGGER.info("Pipeline is reused for new input and output files");
+        return code;
+    }
+
+    //Метод вывода наибольшего объема данных в конвейере в лог и метрики
+
+    private void reportMemory() {
+        if (governor == null)
+            return;
+        long waits = governor.getWaits();
+        long waitTime = governor.getWaitTime();
+        if (shards != null)
+            for (Manager shard : shards) {  // - ожидают модули чтения копий конвейера
+                waits += shard.governor.getWaits();
+                waitTime += shard.governor.getWaitTime();
+            }
+        metrics.set("memory_budget", governor.getBudget());
+        metrics.set("memory_peak", governor.getPeak());
+        metrics.set("memory_waits", waits);
+        metrics.set("memory_wait_ns", waitTime);
+        LOGGER.info("Memory peak is " + governor.getPeak() + " of " + governor.getBudget() + " bytes");
+    }
+
+    //Метод вывода итоговых метрик конвейера в лог и, если указан, в файл
+
+    private void reportMetrics() {
+        reportMemory();
+        String json = metrics.toJson();
+        LOGGER.info("Pipeline metrics: " + json);
+        if (metricsFileName == null)
+            return;
+        try (FileWriter writer = new FileWriter(metricsFileName)) {
+            writer.write(json);
+        } catch (IOException e) {   // - обработка исключения
+            LOGGER.severe("Couldn't write metrics to \"" + metricsFileName + "\"");
+        }
+    }
+
+    //Метод, возвращающий пул буферов модуля чтения, null - модуль чтения не передает данные без упаковки
+
+    public ChunkPool getChunkPool() {
+        if (reader instanceof IPrimitiveProducer)
+            return ((IPrimitiveProducer) reader).getChunkPool();
+        return null;
+    }
+
+    //Метод, возвращающий метрики конвейера
+
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    //Метод параллельного запуска копий конвейера в режиме разбиения файла
+
+    private RC runShards() {
+        final RC[] codes = new RC[shards.length];
+        Thread[] threads = new Thread[shards.length];
+        for (int i = 0; i < shards.length; i++) {
+            final int index = i;
+            threads[i] = new Thread(new Runnable() {
+                public void run() {
+                    codes[index] = shards[index].run();
+                }
+            }, "pipeline-shard-" + i);
+            threads[i].start();
+        }
+        RC code = RC.CODE_SUCCESS;
+        for (int i = 0; i < shards.length; i++) {
+            try {
+                threads[i].join();
+            } catch (InterruptedException e) {
+                LOGGER.severe("Shard is interrupted");
+                return RC.CODE_FAILED_TO_WRITE;
+            }
+            if (code == RC.CODE_SUCCESS && codes[i] != null)
+                code = codes[i];
+        }
+        return code;
+    }
+
+    //Метод передачи данных из потока чтения в поток записи средствами системы без копирования в буферы
+
+    private RC transfer() {
+        try {
+            FileChannel input = fis.getChannel();
+            FileChannel output = fos.getChannel();
+            long position = rangePosition >= 0 ? rangePosition : input.position();
+            long count = rangePosition >= 0 ? rangeLength : input.size() - position;
+            long total = 0;
+            if (rangePosition >= 0) // - запись по тому же смещению выходного файла
+                output.position(position);
+            while (total < count) {
+                long n = input.transferTo(position + total, count - total, output);
+                if (n <= 0) // - файл стал короче, чем при запуске
+                    break;
+                total += n;
+            }
+            metrics.add("passthrough_runs", 1);
+            metrics.add("passthrough_bytes", total);
+        } catch (IOException e) {   // - обработка исключения
+            LOGGER.severe("Couldn't transfer data to output file");
+            return RC.CODE_FAILED_TO_WRITE;
+        }
+        LOGGER.info("All the data was transferred successfully");
+        return RC.CODE_SUCCESS;
+    }
+
     //Метод, запускающий конвеер, а также закрывающий потоки чтения/записи
 
     public RC run() {
         RC code = RC.CODE_SUCCESS;
+        long start = System.nanoTime();
+
+        if (shards != null) {   // - запуск копий конвейера в режиме разбиения файла
+            code = runShards();
+            metrics.set("run_ns", System.nanoTime() - start);
+            reportMetrics();
+            return code;
+        }
+
+        for (IThreadedStep step : threadedSteps)    // - запуск потоков модулей в многопоточном и параллельном режимах
+            step.start();
 
-        code = starter.execute();    // - запуск конвейера
+        if (isPassthrough)
+            code = transfer();  // - передача данных без участия модулей
+        else
+            code = starter.execute();    // - запуск конвейера
+
+        for (IThreadedStep step : threadedSteps) {  // - ожидание завершения модулей в порядке следования
+            RC stepCode = step.join();
+            if (code == RC.CODE_SUCCESS)
+                code = stepCode;
+        }
 
         try {
             fis.close();    // - закрытие потока чтения
@@ -303,6 +843,10 @@ public class Manager implements IConfigurable {
             LOGGER.severe("Output stream is invalid");
             code = RC.CODE_INVALID_OUTPUT_STREAM;
         }
+        if (isShard)    // - итоговые метрики выводит менеджер всего файла
+            return code;
+        metrics.set("run_ns", System.nanoTime() - start);
+        reportMetrics();
         return code;
     }
 }
\ No newline at end of file
@@ -0,0 +1,114 @@
+//Класс ограничения объема данных, находящихся в конвейере одновременно.
+//Модуль чтения занимает объем порции до ее чтения, модуль записи освобождает его после записи порции в файл,
+//поэтому учитываются все порции между ними: в очередях связей, у копий модуля обработки и в буферах модуля записи.
+//При исчерпании бюджета модуль чтения ожидает освобождения, порция больше всего бюджета уменьшается до его размера.
+//Модуль записи при нехватке бюджета записывает накопленные данные сразу, чтобы ожидающее чтение могло продолжиться.
+//Ограничитель копии конвейера дополнительно учитывает объем в общем ограничителе, который только считает пик
+
+public class MemoryGovernor {
+    private final long budget;  // - бюджет объема данных, байт
+    private final MemoryGovernor parent;    // - общий ограничитель для учета, null - ограничитель верхнего уровня
+
+    private long inFlight;  // - объем данных в конвейере
+    private long peak;  // - наибольший объем данных в конвейере
+    private long chunkSize; // - наибольший размер порции модуля чтения
+    private long waits; // - количество ожиданий модуля чтения
+    private long waitTime;  // - суммарное время ожиданий, нс
+    private boolean isCancelled;    // - признак остановки конвейера с ошибкой: чтение больше не ожидает
+
+    //Конструктор
+
+    public MemoryGovernor(long budget) {
+        this(budget, null);
+    }
+
+    //Конструктор ограничителя копии конвейера с учетом в общем ограничителе
+
+    public MemoryGovernor(long budget, MemoryGovernor parent) {
+        this.budget = budget;
+        this.parent = parent;
+    }
+
+    //Установка наибольшего размера порции, по которому модуль записи определяет нехватку бюджета
+
+    public synchronized void setChunkSize(long size) {
+        chunkSize = Math.max(chunkSize, Math.min(size, budget));
+    }
+
+    //Учет объема и пика
+
+    private synchronized void add(long bytes) {
+        inFlight += bytes;
+        peak = Math.max(peak, inFlight);
+    }
+
+    //Занятие объема порции с ожиданием освобождения; возвращает занятый объем, не превышающий бюджета.
+    //Если в конвейере нет данных, порция занимается сразу, чтобы чтение не остановилось
+
+    public long acquire(long bytes) throws InterruptedException {
+        long res = Math.min(bytes, budget);
+        synchronized (this) {
+            if (!isCancelled && inFlight > 0 && inFlight + res > budget) {
+                long start = System.nanoTime();
+                while (!isCancelled && inFlight > 0 && inFlight + res > budget)
+                    wait();
+                waits++;
+                waitTime += System.nanoTime() - start;
+            }
+            add(res);
+            if (parent != null) // - под блокировкой копии, чтобы общий объем не превышал сумму объемов копий
+                parent.add(res);
+        }
+        return res;
+    }
+
+    //Освобождение объема записанных либо непрочитанных данных
+
+    public void release(long bytes) {
+        if (bytes <= 0)
+            return;
+        synchronized (this) {
+            inFlight -= bytes;
+            if (parent != null)
+                parent.release(bytes);
+            notifyAll();
+        }
+    }
+
+    //Остановка ожиданий после ошибки модуля записи: данные, оставшиеся в конвейере, уже не будут освобождены
+
+    public synchronized void cancel() {
+        isCancelled = true;
+        notifyAll();
+    }
+
+    //Признак нехватки бюджета для следующей порции модуля чтения
+
+    public synchronized boolean isPressured() {
+        return inFlight + chunkSize > budget;
+    }
+
+    //Бюджет объема данных
+
+    public long getBudget() {
+        return budget;
+    }
+
+    //Наибольший объем данных в конвейере
+
+    public synchronized long getPeak() {
+        return peak;
+    }
+
+    //Количество ожиданий модуля чтения
+
+    public synchronized long getWaits() {
+        return waits;
+    }
+
+    //Суммарное время ожиданий модуля чтения, нс
+
+    public synchronized long getWaitTime() {
+        return waitTime;
+    }
+}
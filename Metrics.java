@@ -0,0 +1,150 @@
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+//Класс сбора метрик работы конвейера.
+//Модули сообщают о каждой порции в свой набор счетчиков вместо записи в лог, менеджер выводит итог в формате JSON
+
+class Metrics {
+    //Внутренний класс гистограммы времени с корзинами по степеням двойки наносекунд
+
+    static class Histogram {
+        private final static int BUCKETS = 64;  // - количество корзин
+
+        private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);   // - количество значений в корзинах
+        private final LongAdder count = new LongAdder();    // - общее количество значений
+
+        //Добавление значения
+
+        public void record(long nanos) {
+            buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(Math.max(nanos, 1)));
+            count.increment();
+        }
+
+        //Оценка квантиля сверху по границе корзины
+
+        public long quantile(double q) {
+            long total = count.sum();
+            if (total == 0)
+                return 0;
+            long rank = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += buckets.get(i);
+                if (seen >= rank)
+                    return i == BUCKETS - 1 ? Long.MAX_VALUE : (1L << i);
+            }
+            return Long.MAX_VALUE;
+        }
+
+        //Представление в формате JSON
+
+        public String toJson() {
+            return "{\"count\": " + count.sum() + ", \"p50_ns\": " + quantile(0.5) + ", \"p90_ns\": " + quantile(0.9)
+                    + ", \"p99_ns\": " + quantile(0.99) + ", \"max_ns\": " + quantile(1.0) + "}";
+        }
+    }
+
+    //Внутренний класс счетчиков одного модуля конвейера
+
+    static class Stage {
+        private final Metrics metrics;  // - ссылка на общий набор метрик
+        private final String name;  // - имя модуля
+
+        private final LongAdder bytes = new LongAdder();    // - количество обработанных байтов
+        private final LongAdder chunks = new LongAdder();   // - количество обработанных порций
+        private final LongAdder time = new LongAdder(); // - суммарное время работы, нс
+        private final LongAdder waitTime = new LongAdder(); // - суммарное время ожидания очередей, нс
+        private final LongAdder allocations = new LongAdder();  // - количество выделенных буферов
+        private final Histogram latency = new Histogram();  // - распределение времени обработки порции
+        private final Histogram waits = new Histogram();    // - распределение времени ожидания очередей
+
+        Stage(Metrics metrics, String name) {
+            this.metrics = metrics;
+            this.name = name;
+        }
+
+        //Учет обработанной порции
+
+        public void record(long size, long nanos) {
+            bytes.add(size);
+            chunks.increment();
+            time.add(nanos);
+            latency.record(nanos);
+        }
+
+        //Учет ожидания очереди
+
+        public void recordWait(long nanos) {
+            waitTime.add(nanos);
+            waits.record(nanos);
+        }
+
+        //Учет выделенных буферов
+
+        public void recordAllocations(long count) {
+            allocations.add(count);
+        }
+
+        public Metrics getMetrics() {
+            return metrics;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        //Представление в формате JSON
+
+        public String toJson() {
+            return "{\"bytes\": " + bytes.sum() + ", \"chunks\": " + chunks.sum() + ", \"time_ns\": " + time.sum()
+                    + ", \"wait_ns\": " + waitTime.sum() + ", \"allocations\": " + allocations.sum()
+                    + ", \"latency\": " + latency.toJson() + ", \"waits\": " + waits.toJson() + "}";
+        }
+    }
+
+    private final Map<String, Stage> stages = new LinkedHashMap<String, Stage>();   // - счетчики модулей в порядке регистрации
+    private final Map<String, Long> values = new LinkedHashMap<String, Long>(); // - отдельные значения конвейера
+
+    //Получение счетчиков модуля по имени, при отсутствии они создаются
+
+    public synchronized Stage stage(String name) {
+        Stage res = stages.get(name);
+        if (res == null) {
+            res = new Stage(this, name);
+            stages.put(name, res);
+        }
+        return res;
+    }
+
+    //Установка отдельного значения
+
+    public synchronized void set(String name, long value) {
+        values.put(name, value);
+    }
+
+    //Добавление к отдельному значению
+
+    public synchronized void add(String name, long value) {
+        Long old = values.get(name);
+        values.put(name, old == null ? value : old + value);
+    }
+
+    //Представление всех метрик в формате JSON
+
+    public synchronized String toJson() {
+        StringBuilder res = new StringBuilder("{");
+        for (Map.Entry<String, Long> value : values.entrySet())
+            res.append("\"").append(value.getKey()).append("\": ").append(value.getValue()).append(", ");
+        res.append("\"stages\": {");
+        boolean isFirst = true;
+        for (Stage stage : stages.values()) {
+            if (!isFirst)
+                res.append(", ");
+            res.append("\"").append(stage.getName()).append("\": ").append(stage.toJson());
+            isFirst = false;
+        }
+        return res.append("}}").toString();
+    }
+}
@@ -0,0 +1,28 @@
+import java.nio.Buffer;
+
+//Класс упакованной порции: буфер ShortBuffer либо CharBuffer, каждый элемент которого содержит два байта порции,
+//и длина порции в байтах, по которой получатель отбрасывает дополнение нечетного остатка
+
+class PackedChunk {
+    private final Buffer data;  // - упакованные элементы
+    private final int length;   // - длина исходной порции в байтах
+
+    //Конструктор
+
+    public PackedChunk(Buffer data, int length) {
+        this.data = data;
+        this.length = length;
+    }
+
+    //Упакованные элементы
+
+    public Buffer getData() {
+        return data;
+    }
+
+    //Длина исходной порции в байтах
+
+    public int getLength() {
+        return length;
+    }
+}
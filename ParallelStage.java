@@ -0,0 +1,376 @@
+import ru.spbstu.pipeline.*;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+//Класс параллельного модуля обработки для режима параллельного исполнения.
+//Порции производителя нумеруются и раздаются копиям модуля обработки, работающим в отдельных потоках,
+//а результаты передаются потребителю строго в порядке номеров, поэтому выходные данные совпадают с последовательным режимом
+
+public class ParallelStage implements IExecutor, IPrimitiveProducer, IThreadedStep, IMeasurable, IGoverned {
+    private static Logger LOGGER;   // - ссылка на логгер
+
+    private final static long WAIT_TIME = 100;  // - время ожидания свободного места, мс
+    final static int CHUNKS_PER_WORKER = 2; // - количество порций в обработке на одного рабочего
+
+    //Внутренний класс порции с порядковым номером
+
+    private static class Chunk {
+        private long number;    // - порядковый номер порции
+        private Object data;    // - данные порции
+    }
+
+    //Внутренний класс посредника, возвращающего текущую упорядоченную порцию
+
+    public class Mediator implements IMediator {
+        public Object getData() {
+            return current;
+        }
+    }
+
+    //Внутренний класс рабочего: производитель для своей копии модуля обработки и потребитель ее результата
+
+    private class Worker implements IExecutor, IPrimitiveProducer, Runnable {
+        private final IExecutor replica;    // - копия модуля обработки
+        private IMediator output;   // - посредник копии модуля обработки
+        private Object input;   // - текущая порция для обработки
+        private long number;    // - номер текущей порции
+
+        //Внутренний класс посредника, возвращающего копии модуля текущую порцию
+
+        public class Mediator implements IMediator {
+            public Object getData() {
+                return input;
+            }
+        }
+
+        Worker(IExecutor replica) {
+            this.replica = replica;
+        }
+
+        public RC setConfig(String configFileName) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setProducer(IProducer producer) {
+            return RC.CODE_SUCCESS;
+        }
+
+        public RC setConsumer(IConsumer consumer) {
+            return RC.CODE_SUCCESS;
+        }
+
+        //Получение результата копии модуля обработки и передача его на упорядочивание
+
+        public RC execute() {
+            Object data = output.getData();
+            if (isOutUnboxing)
+                data = Converter.toTyped(Converter.unbox(data, outType), outType);
+            return complete(number, data);
+        }
+
+        //Цикл потока рабочего
+
+        public void run() {
+            while (true) {
+                Chunk chunk;
+                try {
+                    chunk = inputQueue.take();
+                } catch (InterruptedException e) {
+                    fail(RC.CODE_FAILED_PIPELINE_CONSTRUCTION);
+                    return;
+                }
+                if (chunk.data == null) // - остановка рабочего
+                    return;
+                input = chunk.data;
+                number = chunk.number;
+                try {
+                    RC res = replica.execute(); // - обработка порции копией модуля
+                    if (res != RC.CODE_SUCCESS) {   // - порция не дойдет до упорядочивания, ожидание ее бесполезно
+                        fail(res);
+                        return;
+                    }
+                } catch (RuntimeException e) {
+                    LOGGER.severe("Worker failed to process data");
+                    fail(RC.CODE_FAILED_PIPELINE_CONSTRUCTION);
+                    return;
+                }
+            }
+        }
+
+        public TYPE[] getOutputTypes() {
+            return producer.getOutputTypes();
+        }
+
+        public IMediator getMediator(TYPE type) {
+            RC code = setInput(type, false);
+            return code == RC.CODE_SUCCESS ? new Mediator() : null;
+        }
+
+        public IMediator getPrimitiveMediator(TYPE type) {
+            RC code = setInput(type, true);
+            return code == RC.CODE_SUCCESS ? new Mediator() : null;
+        }
+
+        public ChunkPool getChunkPool() {
+            return ParallelStage.this.getChunkPool();
+        }
+    }
+
+    private IProducer producer; // - ссылка на производителя
+    private IConsumer consumer; // - ссылка на потребителя
+    private IMediator mediator; // - ссылка на посредника производителя
+    private TYPE inType;    // - тип данных, принимаемых копиями модуля
+    private boolean isInUnboxing;   // - признак распаковки данных производителя для копий модуля
+    private TYPE outType;   // - тип данных, передаваемых потребителю
+    private boolean isOutUnboxing;  // - признак распаковки результатов копий модуля для потребителя
+
+    private final Worker[] workers; // - рабочие с копиями модуля обработки
+    private final Thread[] threads; // - потоки рабочих
+    private final Chunk[] chunks;   // - переиспользуемые порции, индексируемые номером
+    private final Object[] ring;    // - обработанные порции, ожидающие своей очереди, индексируемые номером
+    private final BlockingQueue<Chunk> inputQueue;  // - очередь порций для рабочих
+    private final Semaphore inFlight;   // - ограничение количества порций в обработке
+
+    private long sequence;  // - номер следующей принимаемой порции
+    private long next;  // - номер следующей передаваемой потребителю порции
+    private Object current; // - текущая порция, передаваемая потребителю
+    private volatile RC code = RC.CODE_SUCCESS; // - код завершения
+    private MemoryGovernor governor;    // - ограничитель объема данных в конвейере, null - без ограничения
+    private Metrics.Stage stage = new Metrics().stage("ParallelStage"); // - счетчики параллельного модуля
+
+    //Конструктор
+
+    public ParallelStage(Logger logger, IExecutor[] replicas) {
+        LOGGER = logger;
+        int capacity = replicas.length * CHUNKS_PER_WORKER;
+        workers = new Worker[replicas.length];
+        threads = new Thread[replicas.length];
+        for (int i = 0; i < replicas.length; i++)
+            workers[i] = new Worker(replicas[i]);
+        chunks = new Chunk[capacity];
+        for (int i = 0; i < capacity; i++)
+            chunks[i] = new Chunk();
+        ring = new Object[capacity];
+        inputQueue = new ArrayBlockingQueue<Chunk>(capacity + replicas.length);
+        inFlight = new Semaphore(capacity);
+    }
+
+    //Установка одного конфига всем копиям модуля обработки
+
+    public RC setConfig(String configFileName) {
+        for (Worker worker : workers) {
+            RC code = worker.replica.setConfig(configFileName);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+        }
+        LOGGER.info(workers.length + " executor replicas are configured");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Установка производителя: рабочие становятся производителями копий модуля
+
+    public RC setProducer(IProducer producer) {
+        if (producer == null) {
+            LOGGER.severe("Wrong producer");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        this.producer = producer;
+        for (Worker worker : workers) {
+            RC code = worker.replica.setProducer(worker);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+        }
+        LOGGER.info("Producer set successfully");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Установка потребителя: рабочие становятся потребителями копий модуля
+
+    public RC setConsumer(IConsumer consumer) {
+        if (consumer == null) {
+            LOGGER.severe("Wrong consumer");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        this.consumer = consumer;
+        for (Worker worker : workers) {
+            RC code = worker.replica.setConsumer(worker);
+            if (code != RC.CODE_SUCCESS)
+                return code;
+        }
+        LOGGER.info("Consumer set successfully");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Получение посредника производителя по типу, запрошенному копиями модуля
+
+    private RC setInput(TYPE type, boolean isPrimitive) {
+        if (mediator != null)   // - все копии модуля запрашивают один и тот же тип
+            return type == inType ? RC.CODE_SUCCESS : RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        inType = type;
+        isInUnboxing = isPrimitive && !(producer instanceof IPrimitiveProducer);
+        if (isPrimitive && !isInUnboxing)
+            mediator = ((IPrimitiveProducer) producer).getPrimitiveMediator(type);
+        else
+            mediator = producer.getMediator(type);
+        return RC.CODE_SUCCESS;
+    }
+
+    //Установка ошибки и пробуждение ожидающих потоков
+
+    private void fail(RC res) {
+        synchronized (ring) {
+            if (code == RC.CODE_SUCCESS)
+                code = res;
+            ring.notifyAll();
+        }
+        if (governor != null)   // - производитель, ожидающий бюджета, продолжает работу и получает ошибку
+            governor.cancel();
+    }
+
+    //Прием обработанной порции и передача потребителю всех порций, чья очередь подошла
+
+    private RC complete(long number, Object data) {
+        synchronized (ring) {
+            ring[(int) (number % ring.length)] = data;
+            while (code == RC.CODE_SUCCESS && next < sequence && ring[(int) (next % ring.length)] != null) {
+                int slot = (int) (next % ring.length);
+                current = ring[slot];
+                ring[slot] = null;
+                next++;
+                RC res = consumer.execute();    // - передача потребителю в исходном порядке
+                inFlight.release();
+                if (res != RC.CODE_SUCCESS)
+                    fail(res);
+            }
+            ring.notifyAll();
+        }
+        return code;
+    }
+
+    //Ожидание обработки всех принятых порций и передача потребителю конца потока данных
+
+    private RC finish() {
+        synchronized (ring) {
+            try {
+                while (code == RC.CODE_SUCCESS && next < sequence)
+                    ring.wait(WAIT_TIME);
+            } catch (InterruptedException e) {
+                LOGGER.severe("Pipeline thread was interrupted");
+                return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+            }
+            if (code != RC.CODE_SUCCESS)
+                return code;
+            current = null;
+            code = consumer.execute();
+        }
+        return code;
+    }
+
+    //Метод, нумерующий порцию производителя и передающий ее рабочим
+
+    public RC execute() {
+        if (code != RC.CODE_SUCCESS)    // - остановка производителя при ошибке
+            return code;
+        Object data = mediator.getData();
+        if (data == null)
+            return finish();
+        if (isInUnboxing)
+            data = Converter.toTyped(Converter.unbox(data, inType), inType);
+        long start = System.nanoTime();
+        try {
+            while (!inFlight.tryAcquire(WAIT_TIME, TimeUnit.MILLISECONDS))  // - ожидание места для новой порции
+                if (code != RC.CODE_SUCCESS)
+                    return code;
+            stage.recordWait(System.nanoTime() - start);
+            Chunk chunk = chunks[(int) (sequence % chunks.length)];
+            chunk.number = sequence;
+            chunk.data = data;
+            sequence++;
+            inputQueue.put(chunk);
+        } catch (InterruptedException e) {
+            LOGGER.severe("Pipeline thread was interrupted");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        return RC.CODE_SUCCESS;
+    }
+
+    //Запуск потоков рабочих
+
+    public void start() {
+        for (int i = 0; i < workers.length; i++) {
+            threads[i] = new Thread(workers[i], "pipeline-worker-" + i);
+            threads[i].start();
+        }
+    }
+
+    //Остановка рабочих и ожидание их завершения
+
+    public RC join() {
+        try {
+            for (int i = 0; i < workers.length; i++)
+                inputQueue.put(new Chunk());    // - пустая порция останавливает рабочего
+            for (Thread thread : threads)
+                thread.join();
+        } catch (InterruptedException e) {
+            LOGGER.severe("Pipeline thread was interrupted");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        return code;
+    }
+
+    //Установка ограничителя объема данных, ожидания в котором прекращаются при ошибке
+
+    public void setGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+    }
+
+    //Установка набора счетчиков; копии модуля обработки получают общий набор
+
+    public void setMetrics(Metrics.Stage stage) {
+        this.stage = stage;
+        Metrics.Stage replicas = stage.getMetrics().stage(stage.getName() + "/" + workers[0].replica.getClass().getSimpleName());
+        for (Worker worker : workers)
+            if (worker.replica instanceof IMeasurable)
+                ((IMeasurable) worker.replica).setMetrics(replicas);
+    }
+
+    //Метод, возрващающий потребителю типы данных копий модуля
+
+    public TYPE[] getOutputTypes() {
+        return workers[0].replica.getOutputTypes();
+    }
+
+    //Возвращение экземпляра посредника; посредники копий модуля запрашиваются того же типа
+
+    public IMediator getMediator(TYPE type) {
+        outType = type;
+        for (Worker worker : workers)
+            worker.output = worker.replica.getMediator(type);
+        return new Mediator();
+    }
+
+    //Возвращение экземпляра посредника, передающего данные без упаковки
+
+    public IMediator getPrimitiveMediator(TYPE type) {
+        outType = type;
+        isOutUnboxing = !(workers[0].replica instanceof IPrimitiveProducer);
+        for (Worker worker : workers)
+            if (isOutUnboxing)  // - копии модуля без поддержки передачи без упаковки, данные распаковываются
+                worker.output = worker.replica.getMediator(type);
+            else
+                worker.output = ((IPrimitiveProducer) worker.replica).getPrimitiveMediator(type);
+        return new Mediator();
+    }
+
+    //Возвращение пула буферов производителя
+
+    public ChunkPool getChunkPool() {
+        if (producer instanceof IPrimitiveProducer)
+            return ((IPrimitiveProducer) producer).getChunkPool();
+        return null;
+    }
+}
@@ -0,0 +1,193 @@
+import ru.spbstu.pipeline.RC;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+//Класс кэша разобранных конфигов конвейера, сохраняемого между запусками в двоичном файле.
+//Для каждого конфига хранится словарь токенов, прошедший синтаксическую проверку, вместе с абсолютным путем,
+//временем изменения и размером файла, а также набором токенов, по которому он проверялся.
+//Запись используется, только если файл конфига не изменился и проверяется тем же набором токенов,
+//иначе конфиг разбирается заново и запись обновляется. Кэш общий для всех менеджеров процесса
+
+public class PlanCache {
+    private final static Logger LOGGER = Logger.getLogger(PlanCache.class.getName());   // - создание логгера
+
+    private final static int MAGIC = 0x504C4331;    // - признак файла кэша
+    private final static int VERSION = 1;   // - версия формата файла кэша
+
+    //Внутренний класс записи кэша
+
+    private static class Entry {
+        private final long modified;    // - время изменения файла конфига, нс
+        private final long length;  // - размер файла конфига
+        private final String signature; // - набор токенов, по которому проверен конфиг
+        private final Map<String, Queue<String>> map;   // - словарь токенов конфига
+
+        Entry(long modified, long length, String signature, Map<String, Queue<String>> map) {
+            this.modified = modified;
+            this.length = length;
+            this.signature = signature;
+            this.map = map;
+        }
+    }
+
+    private static String cacheFileName;    // - имя файла кэша, null - кэш не используется
+    private static Map<String, Entry> entries = new HashMap<String, Entry>();   // - записи по абсолютному пути конфига
+    private static boolean isChanged;   // - признак записей, не сохраненных в файл
+    private static int hits;    // - количество конфигов, взятых из кэша
+    private static int misses;  // - количество разобранных заново конфигов
+
+    //Копия словаря: менеджер и модули извлекают значения из очередей словаря
+
+    private static Map<String, Queue<String>> copy(Map<String, Queue<String>> map) {
+        Map<String, Queue<String>> res = new HashMap<String, Queue<String>>();
+        for (Map.Entry<String, Queue<String>> entry : map.entrySet())
+            res.put(entry.getKey(), new LinkedList<String>(entry.getValue()));
+        return res;
+    }
+
+    //Время изменения и размер файла, null - файл недоступен
+
+    private static long[] stat(File file) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+            return new long[]{attributes.lastModifiedTime().to(TimeUnit.NANOSECONDS), attributes.size()};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    //Загрузка кэша из файла; отсутствующий или поврежденный файл дает пустой кэш
+
+    public static synchronized RC load(String fileName) {
+        if (fileName == null) {
+            LOGGER.severe("Null pointer");
+            return RC.CODE_INVALID_ARGUMENT;
+        }
+        cacheFileName = fileName;
+        entries = new HashMap<String, Entry>();
+        isChanged = false;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                LOGGER.warning("Plan cache \"" + fileName + "\" has unknown format and will be rebuilt");
+                return RC.CODE_SUCCESS;
+            }
+            int count = in.readInt();
+            Map<String, Entry> res = new HashMap<String, Entry>();
+            for (int i = 0; i < count; i++) {
+                String path = in.readUTF();
+                long modified = in.readLong();
+                long length = in.readLong();
+                String signature = in.readUTF();
+                int tokens = in.readInt();
+                Map<String, Queue<String>> map = new HashMap<String, Queue<String>>();
+                for (int j = 0; j < tokens; j++) {
+                    String token = in.readUTF();
+                    int values = in.readInt();
+                    Queue<String> queue = new LinkedList<String>();
+                    for (int k = 0; k < values; k++)
+                        queue.offer(in.readUTF());
+                    map.put(token, queue);
+                }
+                res.put(path, new Entry(modified, length, signature, map));
+            }
+            entries = res;
+        } catch (FileNotFoundException e) {
+            LOGGER.info("Plan cache \"" + fileName + "\" will be created");
+            return RC.CODE_SUCCESS;
+        } catch (IOException e) {   // - поврежденный файл не мешает работе, кэш строится заново
+            LOGGER.warning("Plan cache \"" + fileName + "\" is damaged and will be rebuilt");
+            return RC.CODE_SUCCESS;
+        }
+        LOGGER.info("Plan cache \"" + fileName + "\" loaded with " + entries.size() + " configs");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Получение словаря токенов неизменившегося конфига, null - конфиг нужно разобрать
+
+    public static synchronized Map<String, Queue<String>> get(String configFileName, String signature) {
+        if (cacheFileName == null)
+            return null;
+        File file = new File(configFileName);
+        Entry entry = entries.get(file.getAbsolutePath());
+        long[] stat = stat(file);
+        if (entry == null || stat == null || entry.modified != stat[0] || entry.length != stat[1]
+                || !entry.signature.equals(signature)) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return copy(entry.map);
+    }
+
+    //Запоминание словаря токенов конфига, прошедшего проверку
+
+    public static synchronized void put(String configFileName, String signature, Map<String, Queue<String>> map) {
+        if (cacheFileName == null)
+            return;
+        File file = new File(configFileName);
+        long[] stat = stat(file);
+        if (stat == null)
+            return;
+        entries.put(file.getAbsolutePath(), new Entry(stat[0], stat[1], signature, copy(map)));
+        isChanged = true;
+    }
+
+    //Сохранение кэша в файл, если он изменился; файл заменяется целиком после записи во временный
+
+    public static synchronized RC save() {
+        if (cacheFileName == null)
+            return RC.CODE_SUCCESS;
+        LOGGER.info("Plan cache: " + hits + " hits, " + misses + " misses");
+        if (!isChanged)
+            return RC.CODE_SUCCESS;
+        File target = new File(cacheFileName);
+        File temp = new File(target.getAbsolutePath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(entries.size());
+            for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().modified);
+                out.writeLong(entry.getValue().length);
+                out.writeUTF(entry.getValue().signature);
+                out.writeInt(entry.getValue().map.size());
+                for (Map.Entry<String, Queue<String>> token : entry.getValue().map.entrySet()) {
+                    out.writeUTF(token.getKey());
+                    out.writeInt(token.getValue().size());
+                    for (String value : token.getValue())
+                        out.writeUTF(value);
+                }
+            }
+        } catch (IOException e) {   // - обработка исключения
+            LOGGER.severe("Couldn't write plan cache \"" + cacheFileName + "\"");
+            return RC.CODE_FAILED_TO_WRITE;
+        }
+        try {
+            Files.move(temp.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {   // - обработка исключения
+            LOGGER.severe("Couldn't write plan cache \"" + cacheFileName + "\"");
+            return RC.CODE_FAILED_TO_WRITE;
+        }
+        isChanged = false;
+        LOGGER.info("Plan cache \"" + cacheFileName + "\" saved with " + entries.size() + " configs");
+        return RC.CODE_SUCCESS;
+    }
+}
@@ -2,27 +2,43 @@ import ru.spbstu.pipeline.*;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Map;
 import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Logger;
 
 //Класс модуля чтения данных
 
-public class Reader implements IReader {
+public class Reader implements IReader, IPrimitiveProducer, IPackedProducer, IMeasurable, IShardable, IGoverned {
     private static Logger LOGGER;   // - ссылка на логгер
 
     //Перечисление токенов конфига с вложенным строчным представлением
 
     private enum Tokens {
         SIZE_TO_READ("SIZE_TO_READ", 1),
-        TYPE("TYPE", 3);
+        TYPE("TYPE", 3),
+        READ_MODE("READ_MODE", 1, false),
+        READ_AHEAD("READ_AHEAD", 1, false),
+        ADAPTIVE_BOUNDS("ADAPTIVE_BOUNDS", 2, false),
+        BATCH("BATCH", 2, false);
 
         private String title;
         private int valNum;
+        private boolean isRequired; // - признак обязательного токена
 
         Tokens(String title, int valNum) {
+            this(title, valNum, true);
+        }
+
+        Tokens(String title, int valNum, boolean isRequired) {
             this.title = title;
             this.valNum = valNum;
+            this.isRequired = isRequired;
         }
 
         //Метод проверки количества значений для токенов
@@ -38,34 +54,88 @@ public class Reader implements IReader {
 
     public class Mediator implements IMediator {
         public Object getData() {
-            if (buffer == null)
+            if (chunk == null)
                 return null;
-            Object[] res = null;
-            switch (consumerType) {
-                case BYTE:
-                    res = new Byte[sizeToRead];
-                    for (int i = 0; i < sizeToRead; i++)
-                        res[i] = (Byte) buffer[i];
-                    break;
-                case SHORT:
-                    res = new Short[sizeToRead];
-                    short one;
-                    for (int i = 0; i < sizeToRead; i++) {
-                        one = (short) buffer[i];
-                        res[i] = (Short) one;
-                    }
-                    break;
-                case CHAR:
-                    res = new Character[sizeToRead];
-                    char two;
-                    for (int i = 0; i < sizeToRead; i++) {
-                        two = (char) buffer[i];
-                        res[i] = (Character) two;
+            return Converter.box(chunk, consumerType);
+        }
+    }
+
+    //Внутренний класс посредника, передающего данные без упаковки
+
+    public class PrimitiveMediator implements IMediator {
+        public Object getData() {
+            if (chunk == null)
+                return null;
+            return Converter.toTyped(chunk, consumerType);
+        }
+    }
+
+    //Внутренний класс посредника, передающего данные типов SHORT и CHAR по два байта в элементе
+
+    public class PackedMediator implements IMediator {
+        public Object getData() {
+            if (chunk == null)
+                return null;
+            return Converter.pack(chunk, consumerType);
+        }
+    }
+
+    //Внутренний класс потока упреждающего чтения, заполняющего очередь прочитанных порций
+
+    private class Prefetcher implements Runnable {
+        private final BlockingQueue<ByteBuffer> ready;  // - прочитанные порции в порядке следования
+        private volatile boolean isStopped; // - признак остановки чтения потребителем
+        private volatile RC code = RC.CODE_SUCCESS; // - код завершения чтения
+
+        Prefetcher(int depth) {
+            ready = new ArrayBlockingQueue<ByteBuffer>(depth);
+        }
+
+        public void run() {
+            try {
+                if (rangePosition >= 0)    // - переход к началу диапазона
+                    fis.getChannel().position(rangePosition);
+                long position = fis.getChannel().position();    // - позиция в файле
+                while (!isStopped) {
+                    ByteBuffer next = pool.lease(); // - буфер для порции байтов
+                    long start = System.nanoTime();
+                    int flag = readBatch(next, rangeEnd - position);   // - чтение
+                    if (flag == -1) {   // - обработка случая достижения конца файла
+                        pool.release(next);
+                        break;
                     }
-                    break;
+                    next.limit(flag);
+                    position += flag;
+                    stage.record(flag, System.nanoTime() - start);
+                    put(next);
+                }
+            } catch (IOException | InterruptedException e) {   // - обработка исключения
+                code = RC.CODE_FAILED_TO_READ;
+            }
+            put(END);
+        }
+
+        //Постановка порции в очередь с ожиданием места, пока чтение не остановлено
+
+        private void put(ByteBuffer next) {
+            try {
+                while (!isStopped)
+                    if (ready.offer(next, OFFER_TIMEOUT, TimeUnit.MILLISECONDS))
+                        return;
+            } catch (InterruptedException e) {
+                isStopped = true;
             }
-            LOGGER.info("Data converted into \"" + consumerType.toString() + "\" type");
-            return res;
+            if (next != END)    // - порция не передана потребителю и возвращается в пул
+                pool.release(next);
+        }
+
+        //Возврат в пул порций, оставшихся в очереди после остановки чтения
+
+        private void drain() {
+            ByteBuffer rest;
+            while ((rest = ready.poll()) != null)
+                if (rest != END)
+                    pool.release(rest);
         }
     }
 
@@ -79,8 +149,44 @@ public class Reader implements IReader {
     private String configFileName;  // - имя файла конфига
     private Map<String, Queue<String>> map; // - словарь с содержимым конфига
 
+    //Перечисление режимов чтения с их строчным представлением
+
+    private enum ReadMode {
+        STREAM("stream"),
+        MMAP("mmap");
+
+        private String title;
+
+        ReadMode(String title) {
+            this.title = title;
+        }
+    }
+
+    private final static long WINDOW_SIZE = 64L * 1024 * 1024;  // - размер окна отображения файла в память
+    private final static ByteBuffer END = ByteBuffer.allocate(0);   // - признак конца данных в очереди упреждающего чтения
+    private final static long OFFER_TIMEOUT = 100;  // - время ожидания места в очереди между проверками остановки, мс
+    private final static String ADAPTIVE = "adaptive";  // - значение размера порции, подбираемого при чтении
+    private final static int ADAPTIVE_MIN = 4 * 1024;   // - минимальный подбираемый размер порции по умолчанию
+    private final static int ADAPTIVE_MAX = 4 * 1024 * 1024;    // - максимальный подбираемый размер порции по умолчанию
+    private final static long MAX_BATCH = Integer.MAX_VALUE - 8;    // - наибольший размер буфера пакета порций
+
     private int sizeToRead; // - размер порции чтения
-    private byte[] buffer;  // - буфер для хранения прочитанных данных
+    private ReadMode readMode = ReadMode.STREAM;    // - режим чтения
+    private int readAhead;  // - количество порций, читаемых заранее, 0 - без упреждающего чтения
+    private int batchChunks = 1;    // - наибольшее количество порций в пакете, передаваемом потребителю за один вызов
+    private long batchBytes = Long.MAX_VALUE;   // - объем, по достижении которого пакет передается, не дожидаясь всех порций
+    private int batchSize;  // - размер пакета порций
+    private boolean isAdaptive; // - признак подбора размера порции
+    private int adaptiveMin = ADAPTIVE_MIN; // - минимальный подбираемый размер порции
+    private int adaptiveMax = ADAPTIVE_MAX; // - максимальный подбираемый размер порции
+    private ChunkSizer sizer;   // - подбор размера порции, null - размер постоянный
+    private long rangePosition = -1;    // - начало читаемого диапазона файла, -1 - чтение с текущей позиции до конца
+    private long rangeEnd = Long.MAX_VALUE; // - конец читаемого диапазона файла
+    private ChunkPool pool; // - пул буферов для порций данных
+    private ByteBuffer chunk;   // - текущая порция данных, передаваемая потребителю
+    private boolean isPrimitiveConsumer;    // - признак передачи буфера во владение потребителю
+    private MemoryGovernor governor;    // - ограничитель объема данных в конвейере, null - без ограничения
+    private Metrics.Stage stage = new Metrics().stage("Reader");    // - счетчики модуля
 
     //Конструктор
 
@@ -107,6 +213,8 @@ public class Reader implements IReader {
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
         }
         this.consumer = consumer;
+        consumerType = null;    // - тип и владение буфером устанавливает посредник, запрошенный новым потребителем
+        isPrimitiveConsumer = false;
         LOGGER.info("Consumer set successfully");
         return RC.CODE_SUCCESS;
     }
@@ -124,6 +232,11 @@ public class Reader implements IReader {
     private RC valueConverting(Tokens t, Queue<String> queue) {
         switch (t) {
             case SIZE_TO_READ:
+                if (queue.peek().toLowerCase().equals(ADAPTIVE)) {  // - размер подбирается при чтении
+                    isAdaptive = true;
+                    queue.remove();
+                    break;
+                }
                 try {   //Преобразовние строки в целое значение
                     sizeToRead = Integer.parseInt(queue.remove());
                 } catch (NumberFormatException e) {
@@ -148,6 +261,57 @@ public class Reader implements IReader {
                     return RC.CODE_CONFIG_SEMANTIC_ERROR;
                 }
                 break;
+            case READ_MODE: //Установка режима чтения
+                String value = queue.remove().toLowerCase();
+                if (value.equals(ReadMode.STREAM.title))
+                    readMode = ReadMode.STREAM;
+                else if (value.equals(ReadMode.MMAP.title))
+                    readMode = ReadMode.MMAP;
+                else {
+                    LOGGER.severe("Invalid \"" + t.title + "\" value");
+                    return RC.CODE_CONFIG_SEMANTIC_ERROR;
+                }
+                break;
+            case ADAPTIVE_BOUNDS:   //Установка границ подбираемого размера порции
+                if (queue.size() != 2) {
+                    LOGGER.severe("Wrong amount of \"" + t.title + "\" values");
+                    return RC.CODE_CONFIG_SEMANTIC_ERROR;
+                }
+                try {
+                    adaptiveMin = Integer.parseInt(queue.remove());
+                    adaptiveMax = Integer.parseInt(queue.remove());
+                } catch (NumberFormatException e) {
+                    adaptiveMin = 0;
+                }
+                if (adaptiveMin < 1 || adaptiveMax < adaptiveMin) {
+                    LOGGER.severe("Invalid \"" + t.title + "\" value");
+                    return RC.CODE_CONFIG_SEMANTIC_ERROR;
+                }
+                break;
+            case BATCH: //Установка количества порций и объема пакета
+                try {
+                    batchChunks = Integer.parseInt(queue.remove());
+                    if (!queue.isEmpty())
+                        batchBytes = Long.parseLong(queue.remove());
+                } catch (NumberFormatException e) {
+                    batchChunks = 0;
+                }
+                if (batchChunks < 1 || batchBytes < 1) {
+                    LOGGER.severe("Invalid \"" + t.title + "\" value");
+                    return RC.CODE_CONFIG_SEMANTIC_ERROR;
+                }
+                break;
+            case READ_AHEAD:    //Установка количества порций упреждающего чтения
+                try {
+                    readAhead = Integer.parseInt(queue.remove());
+                } catch (NumberFormatException e) {
+                    readAhead = -1;
+                }
+                if (readAhead < 0) {
+                    LOGGER.severe("Invalid \"" + t.title + "\" value");
+                    return RC.CODE_CONFIG_SEMANTIC_ERROR;
+                }
+                break;
         }
         return RC.CODE_SUCCESS;
     }
@@ -157,6 +321,8 @@ public class Reader implements IReader {
     private RC dataValidation() {
         for (Tokens t : Tokens.values()) {
             Queue queue = map.get(t.title);
+            if (queue == null)  // - необязательный токен не указан, используется значение по умолчанию
+                continue;
             if (!t.isValNumValid(queue)) {
                 LOGGER.severe("Wrong amount of \"" + t.title + "\" values");
                 return RC.CODE_CONFIG_SEMANTIC_ERROR;
@@ -173,9 +339,13 @@ public class Reader implements IReader {
 
     private RC readConfig() {
         String[] temp = new String[Tokens.values().length]; // - создание массива текстовых представлений токенов для разбора конфига
-        for (int i = 0; i < Tokens.values().length; i++)
+        int required = 0;   // - количество обязательных токенов
+        for (int i = 0; i < Tokens.values().length; i++) {
             temp[i] = Tokens.values()[i].title;
-        Syntax syntax = new Syntax(LOGGER, temp);   // - создание экземпляра класса синтаксической обработки
+            if (Tokens.values()[i].isRequired)
+                required++;
+        }
+        Syntax syntax = new Syntax(LOGGER, temp, required);   // - создание экземпляра класса синтаксической обработки
         syntax.setConfig(configFileName);   // - чтение и парсинг конфига
         RC code = syntax.readConfig();
         if (code != RC.CODE_SUCCESS)
@@ -185,8 +355,26 @@ public class Reader implements IReader {
             return code;
         map = syntax.getMap();  // - получение обработанного содержимого конфига
         code = dataValidation();
-        if (code == RC.CODE_SUCCESS)
-            LOGGER.info("\"" + configFileName + "\" config file read successfully");
+        if (code != RC.CODE_SUCCESS)
+            return code;
+        if (isAdaptive) {   // - буферы пула вмещают наибольшую порцию, размер порции подбирается в этих границах
+            sizer = new ChunkSizer(adaptiveMin, adaptiveMax);
+            sizeToRead = adaptiveMax;
+        }
+        if (isAdaptive && batchChunks > 1) {    // - подбираемые порции и так крупные
+            LOGGER.info("Batching is not used with adaptive chunk size");
+            batchChunks = 1;
+        }
+        long chunks = Math.min(batchChunks, batchBytes / sizeToRead + (batchBytes % sizeToRead == 0 ? 0 : 1));   // - порций в пакете
+        if (chunks * sizeToRead > MAX_BATCH) {
+            LOGGER.severe("Batch is too large");
+            return RC.CODE_CONFIG_SEMANTIC_ERROR;
+        }
+        batchSize = (int) (chunks * sizeToRead);
+        pool = new ChunkPool(batchSize);   // - создание пула буферов по размеру пакета порций
+        if (readMode == ReadMode.MMAP && readAhead > 0)
+            LOGGER.info("Read-ahead is not used in mmap mode");
+        LOGGER.info("\"" + configFileName + "\" config file read successfully");
         return code;
     }
 
@@ -202,16 +390,87 @@ public class Reader implements IReader {
         return readConfig();
     }
 
-    //Метод выполненяющий чтения данных, а также запуск модуля потребителя
+    //Текущий размер порции: постоянный либо подбираемый
 
-    public RC execute() {
+    private int getChunkSize() {
+        return sizer == null ? sizeToRead : sizer.getSize();
+    }
+
+    //Размер пакета порций: пакет из нескольких порций собирается только при постоянном размере порции
+
+    private int getBatchSize() {
+        return sizer == null ? batchSize : sizer.getSize();
+    }
+
+    //Чтение пакета порций в буфер одним вызовом: порции следуют в пакете подряд, поэтому их границы находятся
+    //на смещениях, кратных размеру порции, а неполная порция может быть только последней. -1 - конец данных
+
+    private int readBatch(ByteBuffer buffer, long remaining) throws IOException, InterruptedException {
+        int size = acquire((int) Math.min(getBatchSize(), remaining));  // - пакет не выходит за конец диапазона
+        int flag = size > 0 ? fis.read(buffer.array(), 0, size) : -1;   // - чтение
+        release(size - Math.max(flag, 0));  // - объем непрочитанной части пакета
+        return flag;
+    }
+
+    //Занятие объема порции в ограничителе; возвращает размер порции, уменьшенный, если порция больше бюджета
+
+    private int acquire(int size) throws InterruptedException {
+        if (governor == null || size <= 0)
+            return size;
+        return (int) governor.acquire(size);
+    }
+
+    //Освобождение объема непрочитанных данных в ограничителе
+
+    private void release(long size) {
+        if (governor != null)
+            governor.release(size);
+    }
+
+    //Остановка ожиданий в ограничителе после ошибки: данные, оставшиеся в конвейере, уже не будут освобождены
+
+    private void cancelGovernor() {
+        if (governor != null)
+            governor.cancel();
+    }
+
+    //Учет времени прохождения порции через конвейер для подбора ее размера
+
+    private void adapt(long size, long nanos) {
+        if (sizer != null && sizer.record(size, nanos))
+            reportChunkSize();
+    }
+
+    //Вывод подобранного размера порции в лог и метрики
+
+    private void reportChunkSize() {
+        if (sizer == null)
+            return;
+        LOGGER.info("Chunk size is set to " + sizer.getSize());
+        stage.getMetrics().set(stage.getName() + "/chunk_size", sizer.getSize());
+        stage.getMetrics().set(stage.getName() + "/chunk_size_changes", sizer.getChanges());
+    }
+
+    //Метод чтения данных из потока порциями в буфер
+
+    private RC readStream() {
         RC code = RC.CODE_SUCCESS;
         int flag = 0;
+        long position = 0;  // - позиция в файле
+        try {
+            if (rangePosition >= 0)    // - переход к началу диапазона
+                fis.getChannel().position(rangePosition);
+            position = fis.getChannel().position();
+        } catch (IOException e) {   // - обработка исключения
+            LOGGER.severe("Couldn't read data from input file");
+            return RC.CODE_FAILED_TO_READ;
+        }
         while (true) {
-            buffer = new byte[sizeToRead];   // - буфер для порции байтов
+            chunk = pool.lease();   // - буфер для порции байтов
+            long start = System.nanoTime();
             try {
-                flag = fis.read(buffer, 0, sizeToRead);   // - чтение
-            } catch (IOException e) {   // - обработка исключения
+                flag = readBatch(chunk, rangeEnd - position);  // - чтение
+            } catch (IOException | InterruptedException e) {   // - обработка исключения
                 LOGGER.severe("Couldn't read data from input file");
                 return RC.CODE_FAILED_TO_READ;
             }
@@ -221,16 +480,127 @@ public class Reader implements IReader {
             }*/
             if (flag == -1) {    // - обработка случая достижения конца файла
                 LOGGER.info("All the data was read successfully");
-                buffer = null;
+                reportChunkSize();
+                stage.recordAllocations(pool.getAllocated());
+                pool.release(chunk);
+                chunk = null;
                 return consumer.execute();
             }
-            LOGGER.info("Portion data was read successfully");
+            chunk.limit(flag);
+            position += flag;
+            stage.record(flag, System.nanoTime() - start);
             code = consumer.execute();    // - запуск модуля потребителя
+            adapt(flag, System.nanoTime() - start);
+            if (!isPrimitiveConsumer)   // - данные скопированы, буфер возвращается в пул
+                pool.release(chunk);
             if (code != RC.CODE_SUCCESS)
                 return code;
         }
     }
 
+    //Метод чтения данных из потока с упреждением: отдельный поток читает заранее до readAhead порций,
+    //пока потребители обрабатывают уже прочитанные
+
+    private RC readAhead() {
+        RC code = RC.CODE_SUCCESS;
+        Prefetcher prefetcher = new Prefetcher(readAhead);
+        Thread thread = new Thread(prefetcher, "pipeline-read-ahead");
+        thread.setDaemon(true);
+        thread.start();
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                chunk = prefetcher.ready.take();    // - ожидание прочитанной порции
+            } catch (InterruptedException e) {
+                code = RC.CODE_FAILED_TO_READ;
+                break;
+            }
+            stage.recordWait(System.nanoTime() - start);
+            if (chunk == END)
+                break;
+            int size = chunk.remaining();
+            code = consumer.execute();    // - запуск модуля потребителя
+            adapt(size, System.nanoTime() - start);
+            if (!isPrimitiveConsumer)   // - данные скопированы, буфер возвращается в пул
+                pool.release(chunk);
+            if (code != RC.CODE_SUCCESS)
+                break;
+        }
+        chunk = null;
+        prefetcher.isStopped = true;    // - остановка чтения, если потребитель завершился с ошибкой
+        if (code != RC.CODE_SUCCESS)    // - поток чтения мог остановиться в ожидании бюджета
+            cancelGovernor();
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            return RC.CODE_FAILED_TO_READ;
+        }
+        prefetcher.drain(); // - порции, не дошедшие до потребителя при ошибке
+        if (code != RC.CODE_SUCCESS)
+            return code;
+        if (prefetcher.code != RC.CODE_SUCCESS) {
+            LOGGER.severe("Couldn't read data from input file");
+            return prefetcher.code;
+        }
+        LOGGER.info("All the data was read successfully");
+        reportChunkSize();
+        stage.recordAllocations(pool.getAllocated());
+        return consumer.execute();
+    }
+
+    //Метод чтения данных через отображение файла в память скользящими окнами
+
+    private RC readMapped() {
+        RC code = RC.CODE_SUCCESS;
+        long window = Math.max(sizeToRead, WINDOW_SIZE / sizeToRead * sizeToRead);  // - окно кратно размеру порции
+        try {
+            FileChannel channel = fis.getChannel();
+            long size = Math.min(channel.size(), rangeEnd);
+            long position = rangePosition >= 0 ? rangePosition : channel.position();
+            while (position < size) {
+                long start = System.nanoTime();
+                long length = Math.min(window, size - position);
+                MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, length);  // - отображение очередного окна
+                while (mapped.hasRemaining()) {
+                    chunk = mapped.slice(); // - порция передается потребителю как срез отображения без копирования
+                    chunk.limit(acquire(Math.min(getBatchSize(), mapped.remaining())));
+                    mapped.position(mapped.position() + chunk.limit());
+                    int limit = chunk.limit();
+                    stage.record(limit, System.nanoTime() - start);   // - время отображения окна учитывается первой порцией
+                    code = consumer.execute();    // - запуск модуля потребителя
+                    adapt(limit, System.nanoTime() - start);
+                    if (code != RC.CODE_SUCCESS)
+                        return code;
+                    start = System.nanoTime();
+                }
+                position += length;
+            }
+            channel.position(position);
+        } catch (IOException | InterruptedException e) {   // - обработка исключения
+            LOGGER.severe("Couldn't map data from input file");
+            return RC.CODE_FAILED_TO_READ;
+        }
+        LOGGER.info("All the data was read successfully");
+        reportChunkSize();
+        chunk = null;
+        return consumer.execute();
+    }
+
+    //Метод выполненяющий чтения данных, а также запуск модуля потребителя
+
+    public RC execute() {
+        RC code;
+        if (readMode == ReadMode.MMAP)
+            code = readMapped();
+        else if (readAhead > 0)
+            code = readAhead();
+        else
+            code = readStream();
+        if (code != RC.CODE_SUCCESS)
+            cancelGovernor();
+        return code;
+    }
+
     //Метод, возрващающий потребителю поддерживаемые модулем типы данных
 
     public TYPE[] getOutputTypes() {
@@ -241,6 +611,62 @@ public class Reader implements IReader {
 
     public IMediator getMediator(TYPE type) {
         consumerType = type;
+        isPrimitiveConsumer = false;
         return new Mediator();
     }
+
+    //Возвращение экземпляра посредника, передающего данные без упаковки; буфер передается во владение
+    //потребителю только для типа BYTE, для SHORT и CHAR потребитель получает копию, а буфер остается у модуля
+
+    public IMediator getPrimitiveMediator(TYPE type) {
+        consumerType = type;
+        isPrimitiveConsumer = type == TYPE.BYTE;
+        return new PrimitiveMediator();
+    }
+
+    //Возвращение экземпляра посредника упакованных данных; упакованная порция копируется, буфер остается у модуля
+
+    public IMediator getPackedMediator(TYPE type) {
+        consumerType = type;
+        isPrimitiveConsumer = false;
+        return new PackedMediator();
+    }
+
+    //Установка набора счетчиков модуля
+
+    public void setMetrics(Metrics.Stage stage) {
+        this.stage = stage;
+    }
+
+    //Установка ограничителя объема данных; порция не больше буфера пула
+
+    public void setGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        governor.setChunkSize(pool.getChunkSize());
+    }
+
+    //Кратность границ диапазона: диапазон начинается с границы порции, как при чтении файла целиком
+
+    public long getAlignment() {
+        return sizeToRead;
+    }
+
+    //Установка диапазона байтов файла для чтения
+
+    public RC setRange(long position, long length) {
+        if (position < 0 || length < 0) {
+            LOGGER.severe("Invalid range");
+            return RC.CODE_INVALID_ARGUMENT;
+        }
+        rangePosition = position;
+        rangeEnd = position + length;
+        LOGGER.info("Range is set");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Возвращение пула буферов для порций данных
+
+    public ChunkPool getChunkPool() {
+        return pool;
+    }
 }
\ No newline at end of file
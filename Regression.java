@@ -0,0 +1,310 @@
+import ru.spbstu.pipeline.RC;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+//Класс сквозной проверки производительности конвейера.
+//Для каждой конфигурации создаются синтетический входной файл и конфиги модулей, конвейер несколько раз собирается
+//и запускается через менеджер, а результат сверяется с эталонным сдвигом.
+//Лучшая пропускная способность сравнивается с сохраненной базовой; при ее отсутствии базовая записывается.
+//Запуск: java Regression <файл базовых значений> [размер входа, МБ [допустимое падение, %]]
+
+public class Regression {
+    private final static int INPUT_SIZE = 64;   // - размер входного файла по умолчанию, МБ
+    private final static double THRESHOLD = 10; // - допустимое падение пропускной способности по умолчанию, %
+    private final static int ROUNDS = 3;    // - количество запусков каждой конфигурации
+    private final static int SIZE_TO_READ = 64 * 1024;  // - размер порции чтения
+    private final static int SIZE_TO_WRITE = 256 * 1024;    // - размер буфера записи
+    private final static int SHIFT_AMOUNT = 3;  // - величина сдвига
+    private final static String PROC_STATUS = "/proc/self/status";  // - сведения о процессе для пикового RSS
+    private final static String PROC_CLEAR_REFS = "/proc/self/clear_refs"; // - сброс пикового RSS процесса
+
+    //Внутренний класс конфигурации конвейера
+
+    private static class Setup {
+        private final String name;  // - название конфигурации
+        private final String[] order;   // - порядок модулей
+        private final String engine;    // - режим исполнения
+        private final String readMode;  // - режим чтения
+        private final String writeMode; // - режим записи
+
+        Setup(String name, String[] order, String engine, String readMode, String writeMode) {
+            this.name = name;
+            this.order = order;
+            this.engine = engine;
+            this.readMode = readMode;
+            this.writeMode = writeMode;
+        }
+    }
+
+    private final static String[] SHIFT = {"Reader", "Executor", "Writer"};    // - конвейер со сдвигом
+    private final static String[] COPY = {"Reader", "Writer"};  // - конвейер копирования
+
+    private final static Setup[] SETUPS = { // - проверяемые конфигурации
+            new Setup("sync-stream", SHIFT, "sync", "stream", "sync"),
+            new Setup("sync-mmap", SHIFT, "sync", "mmap", "sync"),
+            new Setup("sync-behind", SHIFT, "sync", "stream", "behind"),
+            new Setup("threaded-stream", SHIFT, "threaded", "stream", "sync"),
+            new Setup("parallel-stream", SHIFT, "parallel", "stream", "sync"),
+            new Setup("parallel-mmap", SHIFT, "parallel", "mmap", "sync"),
+            new Setup("sharded-stream", SHIFT, "sharded", "stream", "sync"),
+            new Setup("sharded-mmap", SHIFT, "sharded", "mmap", "sync"),
+            new Setup("copy-stream", COPY, "sync", "stream", "sync")
+    };
+
+    //Внутренний класс результата конфигурации
+
+    private static class Result {
+        private double mbps;    // - лучшая пропускная способность, МБ/с
+        private long rss = -1;  // - пиковый RSS процесса, КБ
+        private long heap;  // - пиковое использование кучи, КБ
+        private long gcTime;    // - суммарное время сборок мусора, мс
+
+        public String toJson() {
+            return String.format("{\"mbps\": %.1f, \"peak_rss_kb\": %d, \"peak_heap_kb\": %d, \"gc_ms\": %d}",
+                    mbps, rss, heap, gcTime);
+        }
+    }
+
+    private static File dir;    // - рабочий каталог
+    private static File input;  // - входной файл
+    private static byte[] expected; // - эталонный результат сдвига входного файла
+
+    //Запись файла из строк вида "ТОКЕН = значения"
+
+    private static String writeConfig(String name, String... lines) throws IOException {
+        File file = new File(dir, name);
+        try (FileWriter writer = new FileWriter(file)) {
+            for (String line : lines)
+                writer.write(line + System.lineSeparator());
+        }
+        return file.getPath();
+    }
+
+    //Создание синтетического входного файла и эталонного результата
+
+    private static void generate(int size) throws IOException {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        input = new File(dir, "in.bin");
+        try (FileOutputStream fos = new FileOutputStream(input)) {
+            fos.write(data);
+        }
+        new ShiftKernel.Scalar(ShiftKernel.toRotation(SHIFT_AMOUNT, true)).shift(data, 0, size);
+        expected = data;
+    }
+
+    //Создание конфигов менеджера и модулей для конфигурации
+
+    private static String configure(Setup setup) throws IOException {
+        String reader = writeConfig(setup.name + ".reader.cfg", "SIZE_TO_READ = " + SIZE_TO_READ, "TYPE = BYTE",
+                "READ_MODE = " + setup.readMode);
+        String executor = writeConfig(setup.name + ".executor.cfg", "SHIFT_AMOUNT = " + SHIFT_AMOUNT,
+                "SHIFT_DIRECTION = left", "TYPE = BYTE");
+        String writer = writeConfig(setup.name + ".writer.cfg", "SIZE_TO_WRITE = " + SIZE_TO_WRITE, "TYPE = BYTE",
+                "WRITE_MODE = " + setup.writeMode);
+        return writeConfig(setup.name + ".manager.cfg", "READER_CONFIG = " + reader, "EXECUTOR_CONFIG = " + executor,
+                "WRITER_CONFIG = " + writer, "INPUT_FILE = " + input.getPath(),
+                "OUTPUT_FILE = " + new File(dir, setup.name + ".out").getPath(), "READER_NAME = Reader",
+                "EXECUTOR_NAME = Executor", "WRITER_NAME = Writer", "ORDER = " + String.join(" ", setup.order),
+                "ENGINE = " + setup.engine);
+    }
+
+    //Проверка результата работы конвейера
+
+    private static boolean isValid(Setup setup) throws IOException {
+        byte[] output = Files.readAllBytes(new File(dir, setup.name + ".out").toPath());
+        if (setup.order == COPY)
+            return Arrays.equals(output, Files.readAllBytes(input.toPath()));
+        return Arrays.equals(output, expected);
+    }
+
+    //Пиковый RSS процесса из сведений о процессе либо -1 при их отсутствии
+
+    private static long peakRss() {
+        try (BufferedReader reader = new BufferedReader(new FileReader(PROC_STATUS))) {
+            String line;
+            while ((line = reader.readLine()) != null)
+                if (line.startsWith("VmHWM:"))
+                    return Long.parseLong(line.replaceAll("[^0-9]", ""));
+        } catch (IOException | NumberFormatException e) {   // - сведения недоступны
+        }
+        return -1;
+    }
+
+    //Сброс пиковых значений памяти перед конфигурацией
+
+    private static void resetPeaks() {
+        try (FileWriter writer = new FileWriter(PROC_CLEAR_REFS)) {
+            writer.write("5");
+        } catch (IOException e) {   // - сброс недоступен, RSS учитывается с начала работы процесса
+        }
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            pool.resetPeakUsage();
+    }
+
+    //Пиковое использование кучи
+
+    private static long peakHeap() {
+        long res = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans())
+            if (pool.getType() == MemoryType.HEAP)
+                res += pool.getPeakUsage().getUsed();
+        return res / 1024;
+    }
+
+    //Суммарное время сборок мусора
+
+    private static long gcTime() {
+        long res = 0;
+        for (GarbageCollectorMXBean bean : ManagementFactory.getGarbageCollectorMXBeans())
+            res += Math.max(bean.getCollectionTime(), 0);
+        return res;
+    }
+
+    //Многократный запуск конвейера в конфигурации; null при ошибке
+
+    private static Result measure(Setup setup) throws IOException {
+        String config = configure(setup);
+        Result res = new Result();
+        System.gc();
+        resetPeaks();
+        long gc = gcTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            long start = System.nanoTime();
+            Manager manager = new Manager();
+            RC code = manager.setConfig(config);
+            if (code == RC.CODE_SUCCESS)
+                code = manager.setPipeline();
+            if (code == RC.CODE_SUCCESS)
+                code = manager.run();
+            long time = System.nanoTime() - start;
+            if (code != RC.CODE_SUCCESS) {
+                System.err.println(setup.name + ": pipeline failed with " + code);
+                return null;
+            }
+            if (!isValid(setup)) {
+                System.err.println(setup.name + ": output differs from the expected one");
+                return null;
+            }
+            res.mbps = Math.max(res.mbps, input.length() / (time / 1e9) / (1024 * 1024));
+        }
+        res.gcTime = gcTime() - gc;
+        res.rss = peakRss();
+        res.heap = peakHeap();
+        return res;
+    }
+
+    //Чтение базовых значений пропускной способности из файла
+
+    private static Map<String, Double> readBaseline(File file) throws IOException {
+        Map<String, Double> res = new LinkedHashMap<String, Double>();
+        String text = new String(Files.readAllBytes(file.toPath()));
+        Matcher matcher = Pattern.compile("\"([^\"]+)\"\\s*:\\s*\\{\\s*\"mbps\"\\s*:\\s*([0-9.]+)").matcher(text);
+        while (matcher.find())
+            res.put(matcher.group(1), Double.parseDouble(matcher.group(2)));
+        return res;
+    }
+
+    //Запись результатов в формате JSON
+
+    private static void writeResults(File file, Map<String, Result> results) throws IOException {
+        StringBuilder res = new StringBuilder("{\n");
+        boolean isFirst = true;
+        for (Map.Entry<String, Result> result : results.entrySet()) {
+            if (!isFirst)
+                res.append(",\n");
+            res.append("  \"").append(result.getKey()).append("\": ").append(result.getValue().toJson());
+            isFirst = false;
+        }
+        try (FileWriter writer = new FileWriter(file)) {
+            writer.write(res.append("\n}\n").toString());
+        }
+    }
+
+    //Удаление рабочего каталога
+
+    private static void cleanUp() {
+        File[] files = dir.listFiles();
+        if (files != null)
+            for (File file : files)
+                file.delete();
+        dir.delete();
+    }
+
+    public static void main(String[] args) {    // - точка входа
+        if (args.length < 1 || args.length > 3) {   // - обработка случая неверного количества переданных аргументов
+            System.err.println("Wrong number of arguments!");
+            System.exit(2);
+        }
+        File baselineFile = new File(args[0]);
+        int size = INPUT_SIZE;
+        double threshold = THRESHOLD;
+        try {
+            if (args.length > 1)
+                size = Integer.parseInt(args[1]);
+            if (args.length > 2)
+                threshold = Double.parseDouble(args[2]);
+        } catch (NumberFormatException e) {
+            System.err.println("Invalid arguments!");
+            System.exit(2);
+        }
+        Logger.getLogger("").setLevel(Level.WARNING);   // - отключение информационных сообщений конвейера
+
+        boolean isFailed = false;
+        Map<String, Result> results = new LinkedHashMap<String, Result>();
+        try {
+            dir = Files.createTempDirectory("regression").toFile();
+            generate(size * 1024 * 1024);
+            for (Setup setup : SETUPS) {
+                Result result = measure(setup);
+                if (result == null) {
+                    isFailed = true;
+                    continue;
+                }
+                results.put(setup.name, result);
+            }
+            cleanUp();
+
+            if (!baselineFile.exists()) {   // - первая проверка записывает базовые значения
+                writeResults(baselineFile, results);
+                System.out.println("Baseline is written to " + baselineFile.getPath());
+            }
+            Map<String, Double> baseline = readBaseline(baselineFile);
+            System.out.println(String.format("%-16s %10s %10s %8s %12s %12s %8s", "setup", "MB/s", "base MB/s",
+                    "change", "peak RSS kB", "peak heap kB", "gc ms"));
+            for (Map.Entry<String, Result> entry : results.entrySet()) {
+                Result result = entry.getValue();
+                Double base = baseline.get(entry.getKey());
+                double change = base == null || base == 0 ? 0 : (result.mbps - base) / base * 100;
+                boolean isRegression = change < -threshold;
+                System.out.println(String.format("%-16s %10.1f %10s %7.1f%% %12d %12d %8d%s", entry.getKey(),
+                        result.mbps, base == null ? "-" : String.format("%.1f", base), change, result.rss,
+                        result.heap, result.gcTime, isRegression ? "  REGRESSION" : ""));
+                isFailed |= isRegression;
+            }
+        } catch (IOException e) {   // - обработка исключения
+            System.err.println("Regression run failed: " + e.getMessage());
+            System.exit(2);
+        }
+        if (isFailed)
+            System.exit(1);
+    }
+}
@@ -0,0 +1,229 @@
+import ru.spbstu.pipeline.*;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+//Класс связи между модулями конвейера для многопоточного режима.
+//Связь встает между производителем и потребителем: порции производителя складываются в ограниченную очередь,
+//а потребитель запускается в собственном потоке и забирает их через посредника связи
+
+public class StageLink implements IExecutor, IPrimitiveProducer, IPackedProducer, IThreadedStep, IMeasurable, IGoverned,
+        Runnable {
+    private static Logger LOGGER;   // - ссылка на логгер
+
+    private final static Object END = new Object(); // - признак конца потока данных в очереди
+    private final static long WAIT_TIME = 100;  // - время ожидания места в очереди, мс
+
+    //Внутренний класс посредника, возвращающего текущую порцию из очереди
+
+    public class Mediator implements IMediator {
+        public Object getData() {
+            return current;
+        }
+    }
+
+    private IProducer producer; // - ссылка на производителя
+    private IConsumer consumer; // - ссылка на потребителя
+    private IMediator mediator; // - ссылка на посредника производителя
+    private TYPE type;  // - установленный тип данных
+    private boolean isUnboxing; // - признак распаковки данных производителя для потребителя без упаковки
+
+    private final BlockingQueue<Object> queue;  // - очередь порций между производителем и потребителем
+    private Object current; // - текущая порция, передаваемая потребителю
+    private boolean isEndSent;  // - признак передачи конца потока данных в очередь
+
+    private Thread thread;  // - поток потребителя
+    private volatile RC code = RC.CODE_SUCCESS; // - код завершения потребителя
+    private MemoryGovernor governor;    // - ограничитель объема данных в конвейере, null - без ограничения
+    private Metrics.Stage stage = new Metrics().stage("StageLink"); // - счетчики связи
+
+    //Конструктор
+
+    public StageLink(Logger logger, int queueSize) {
+        LOGGER = logger;
+        queue = new ArrayBlockingQueue<Object>(queueSize);
+    }
+
+    //Связь не имеет собственного конфига
+
+    public RC setConfig(String configFileName) {
+        return RC.CODE_SUCCESS;
+    }
+
+    //Установка производителя
+
+    public RC setProducer(IProducer producer) {
+        if (producer == null) {
+            LOGGER.severe("Wrong producer");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        this.producer = producer;
+        LOGGER.info("Producer set successfully");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Производитель, порции которого передает связь
+
+    public IProducer getProducer() {
+        return producer;
+    }
+
+    //Установка потребителя
+
+    public RC setConsumer(IConsumer consumer) {
+        if (consumer == null) {
+            LOGGER.severe("Wrong consumer");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        this.consumer = consumer;
+        LOGGER.info("Consumer set successfully");
+        return RC.CODE_SUCCESS;
+    }
+
+    //Помещение порции в очередь с ожиданием свободного места, пока потребитель работает без ошибок
+
+    private RC offer(Object data) {
+        long start = System.nanoTime();
+        try {
+            while (!queue.offer(data, WAIT_TIME, TimeUnit.MILLISECONDS))
+                if (code != RC.CODE_SUCCESS)
+                    return code;
+            stage.recordWait(System.nanoTime() - start);    // - время ожидания производителя
+        } catch (InterruptedException e) {
+            LOGGER.severe("Pipeline thread was interrupted");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        return RC.CODE_SUCCESS;
+    }
+
+    //Метод, получающий порцию у производителя и передающий ее в очередь потребителя
+
+    public RC execute() {
+        if (code != RC.CODE_SUCCESS)    // - остановка производителя при ошибке потребителя
+            return code;
+        Object data = mediator.getData();
+        if (data == null)
+            isEndSent = true;
+        else if (isUnboxing)
+            data = Converter.toTyped(Converter.unbox(data, type), type);
+        return offer(data == null ? END : data);
+    }
+
+    //Установка ошибки потребителя; производитель, ожидающий бюджета, продолжает работу и получает ошибку
+
+    private void fail(RC res) {
+        code = res;
+        if (governor != null)
+            governor.cancel();
+    }
+
+    //Цикл потока потребителя
+
+    public void run() {
+        while (true) {
+            Object data;
+            long start = System.nanoTime();
+            try {
+                data = queue.take();
+                stage.recordWait(System.nanoTime() - start);    // - время простоя потребителя
+            } catch (InterruptedException e) {
+                LOGGER.severe("Pipeline thread was interrupted");
+                fail(RC.CODE_FAILED_PIPELINE_CONSTRUCTION);
+                return;
+            }
+            current = data == END ? null : data;
+            RC res = consumer.execute();    // - запуск потребителя в своем потоке
+            if (res != RC.CODE_SUCCESS) {
+                fail(res);
+                return;
+            }
+            if (data == END)
+                return;
+        }
+    }
+
+    //Запуск потока потребителя
+
+    public void start() {
+        isEndSent = false;  // - связь повторно запускаемого конвейера
+        thread = new Thread(this, "pipeline-" + consumer.getClass().getSimpleName());
+        thread.start();
+    }
+
+    //Завершение работы связи: передача конца потока, если производитель его не передал, и ожидание потребителя
+
+    public RC join() {
+        if (!isEndSent) {
+            isEndSent = true;
+            offer(END);
+        }
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            LOGGER.severe("Pipeline thread was interrupted");
+            return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
+        }
+        return code;
+    }
+
+    //Установка ограничителя объема данных, ожидания в котором прекращаются при ошибке потребителя
+
+    public void setGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+    }
+
+    //Установка набора счетчиков связи
+
+    public void setMetrics(Metrics.Stage stage) {
+        this.stage = stage;
+    }
+
+    //Метод, возрващающий потребителю типы данных производителя
+
+    public TYPE[] getOutputTypes() {
+        return producer.getOutputTypes();
+    }
+
+    //Возвращение экземпляра посредника; посредник производителя запрашивается того же типа
+
+    public IMediator getMediator(TYPE type) {
+        mediator = producer.getMediator(type);
+        return new Mediator();
+    }
+
+    //Возвращение экземпляра посредника, передающего данные без упаковки
+
+    public IMediator getPrimitiveMediator(TYPE type) {
+        this.type = type;
+        isUnboxing = !(producer instanceof IPrimitiveProducer);
+        if (isUnboxing) // - производитель без поддержки передачи без упаковки, данные распаковываются связью
+            mediator = producer.getMediator(type);
+        else
+            mediator = ((IPrimitiveProducer) producer).getPrimitiveMediator(type);
+        return new Mediator();
+    }
+
+    //Возвращение посредника упакованных данных, если их передает производитель; порции проходят через очередь как есть
+
+    public IMediator getPackedMediator(TYPE type) {
+        if (!(producer instanceof IPackedProducer))
+            return null;
+        IMediator packed = ((IPackedProducer) producer).getPackedMediator(type);
+        if (packed == null)
+            return null;
+        this.type = type;
+        isUnboxing = false;
+        mediator = packed;
+        return new Mediator();
+    }
+
+    //Возвращение пула буферов производителя
+
+    public ChunkPool getChunkPool() {
+        if (producer instanceof IPrimitiveProducer)
+            return ((IPrimitiveProducer) producer).getChunkPool();
+        return null;
+    }
+}
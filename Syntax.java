@@ -12,15 +12,24 @@ public class Syntax extends BaseGrammar implements IConfigurable {
 
     private final static int WORDS_NUM = 2; // - значение минимального количества слов в стоке
 
+    private int requiredNum;    // - количество обязательных токенов, следующих первыми в списке
     private String configFileName;  // - имя конфигурационного файла
     private ArrayList<ArrayList<String>> data;  // - контейнер разделенных на слова строк
     private Map<String, Queue<String>> map; // - словарь, хранящий иформацию: токен - значение
+    private boolean isCached;   // - признак словаря, взятого из кэша разобранных конфигов
 
     //Конструктор
 
     public Syntax(Logger logger, String[] tokens) {
+        this(logger, tokens, tokens.length);
+    }
+
+    //Конструктор для конфигов с необязательными токенами, указываемыми в конце списка
+
+    public Syntax(Logger logger, String[] tokens, int requiredNum) {
         super(tokens);
         LOGGER = logger;
+        this.requiredNum = requiredNum;
     }
 
     //Установка имени файла конфига
@@ -31,9 +40,24 @@ public class Syntax extends BaseGrammar implements IConfigurable {
         return RC.CODE_SUCCESS;
     }
 
-    //Метод, вызывающий парсер конфига
+    //Набор токенов, по которому проверяется конфиг, для сверки с записью кэша
+
+    private String signature() {
+        StringBuilder res = new StringBuilder().append(requiredNum).append(delimiter());
+        for (int i = 0; i < numberTokens(); i++)
+            res.append(' ').append(token(i));
+        return res.toString();
+    }
+
+    //Метод, вызывающий парсер конфига, если конфига нет в кэше разобранных конфигов
 
     public RC readConfig() {
+        map = PlanCache.get(configFileName, signature());
+        isCached = map != null;
+        if (isCached) {
+            LOGGER.info("Config file \"" + configFileName + "\" is taken from plan cache");
+            return RC.CODE_SUCCESS;
+        }
         Parser parser = new Parser(LOGGER);
         parser.setConfig(configFileName);
         parser.setDelimiter(delimiter());
@@ -63,7 +87,9 @@ public class Syntax extends BaseGrammar implements IConfigurable {
 
     public RC run() {
         RC code = RC.CODE_SUCCESS;
-        if (data.size() != numberTokens()) {
+        if (isCached)   // - конфиг из кэша уже прошел проверку тем же набором токенов
+            return code;
+        if (data.size() < requiredNum || data.size() > numberTokens()) {
             LOGGER.severe("Wrong amount of tokens in \"" + configFileName + "\" config file");
             return RC.CODE_CONFIG_SEMANTIC_ERROR;
         }
@@ -76,10 +102,16 @@ public class Syntax extends BaseGrammar implements IConfigurable {
                         return code;
                     break;
                 }
-        if (map.size() != numberTokens()) {
+        if (map.size() != data.size()) {
             LOGGER.severe("Invalid token in \"" + configFileName + "\" config file");
             return RC.CODE_CONFIG_GRAMMAR_ERROR;
         }
+        for (int i = 0; i < requiredNum; i++)   // - проверка наличия обязательных токенов
+            if (!map.containsKey(token(i))) {
+                LOGGER.severe("Missing \"" + token(i) + "\" token in \"" + configFileName + "\" config file");
+                return RC.CODE_CONFIG_GRAMMAR_ERROR;
+            }
+        PlanCache.put(configFileName, signature(), map);
         LOGGER.info("\"" + configFileName + "\" config file tokens are valid");
         return RC.CODE_SUCCESS;
     }
@@ -2,78 +2,251 @@ import ru.spbstu.pipeline.*;
 
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.logging.Logger;
 
-//Класс буфера для записи
+//Класс буфера для записи.
+//Небольшие порции копируются в промежуточный буфер целиком, порции не меньше его размера ставятся в очередь без копирования,
+//а запись выполняется одной собирающей записью в канал файла.
+//В режиме отложенной записи заполняется один набор буферов, пока фоновый поток записывает другой
 
-class Buffer {
-    private byte[] buffer;  // - буфер
-    private int filled; // - количество занятых ячеек
+class Buffer implements Runnable {
+    private final static int MAX_QUEUED = 16;   // - максимальное количество порций в очереди на запись
+
+    //Внутренний класс набора буферов, записываемого за одну собирающую запись
+
+    private static class Batch {
+        private ByteBuffer buffer;  // - промежуточный буфер
+        private ByteBuffer[] queued = new ByteBuffer[MAX_QUEUED];   // - порции, ожидающие записи без копирования
+        private int queuedNum;  // - количество порций в очереди
+        private ByteBuffer[] gather = new ByteBuffer[MAX_QUEUED + 1];   // - массив для собирающей записи
+
+        Batch(int size) {
+            buffer = ByteBuffer.allocate(size);
+        }
+    }
+
+    private final static Batch STOP = new Batch(0); // - признак остановки фонового потока
+
+    private Batch batch;    // - заполняемый набор буферов
+    private ChunkPool pool; // - пул, в который возвращаются записанные порции
     FileOutputStream fos;   // - поток для записи
+    private FileChannel channel;    // - канал потока для записи
+
+    private boolean isBehind;   // - признак отложенной записи в фоновом потоке
+    private BlockingQueue<Batch> full;  // - наборы, переданные фоновому потоку на запись
+    private BlockingQueue<Batch> empty; // - записанные наборы, готовые к заполнению
+    private Thread thread;  // - фоновый поток записи
+    private long position = -1; // - позиция записи в файле, -1 - запись в текущую позицию канала
+    private volatile RC code = RC.CODE_SUCCESS; // - код завершения фоновой записи
+    private MemoryGovernor governor;    // - ограничитель объема данных в конвейере, null - без ограничения
 
     //Метод установки потока для записи
 
     public RC setOutputStream(FileOutputStream fos) {
         this.fos = fos;
+        channel = fos.getChannel();
         return RC.CODE_SUCCESS;
     }
 
     //Метод установки буфера определенного размера
 
     public RC setBuffer(int size) {
-        buffer = new byte[size];
+        batch = new Batch(size);
         return RC.CODE_SUCCESS;
     }
 
-    //Провера на заполненность
+    //Метод установки отложенной записи со вторым набором буферов
 
-    public boolean isFull() {
-        return filled == buffer.length;
+    public RC setBehind(int size) {
+        isBehind = true;
+        full = new ArrayBlockingQueue<Batch>(1);
+        empty = new ArrayBlockingQueue<Batch>(1);
+        empty.offer(new Batch(size));
+        return RC.CODE_SUCCESS;
     }
 
-    //Добавление в буффер еще одного значения
+    //Метод установки позиции записи в файле
 
-    public boolean add(byte val) {
-        if (!isFull()) { // - проверка на заполненность
-            buffer[filled] = val;   // - добавление при наличии свободных ячеек
-            filled++;   // - увеличения счетчика занятых ячеек
-        } else
-            return false;   // - возврат при неуспешном добавлении
-        return true;    // - возврат при успешном добавлении
+    public RC setPosition(long position) {
+        this.position = position;
+        return RC.CODE_SUCCESS;
     }
 
-    //Запись буффера в файл
+    //Метод установки ограничителя, в котором освобождается объем записанных данных
 
-    public RC write() {
+    public RC setGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        return RC.CODE_SUCCESS;
+    }
+
+    //Метод установки пула для возвращения записанных порций
+
+    public RC setPool(ChunkPool pool) {
+        this.pool = pool;
+        return RC.CODE_SUCCESS;
+    }
+
+    //Добавление порции данных: постановка в очередь крупной порции либо копирование в промежуточный буфер
+
+    public RC add(ByteBuffer data) {
+        RC code = RC.CODE_SUCCESS;
+        if (data.remaining() >= batch.buffer.capacity()) {  // - крупная порция записывается без копирования
+            if (batch.buffer.position() > 0)    // - данные промежуточного буфера предшествуют порции
+                code = write();
+            batch.queued[batch.queuedNum++] = data;
+            if (code == RC.CODE_SUCCESS && batch.queuedNum == MAX_QUEUED)
+                code = write();
+            return code;
+        }
+        while (data.hasRemaining()) {
+            ByteBuffer buffer = batch.buffer;
+            int n = Math.min(buffer.remaining(), data.remaining());
+            data.get(buffer.array(), buffer.arrayOffset() + buffer.position(), n);  // - копирование одним блоком
+            buffer.position(buffer.position() + n);
+            if (!buffer.hasRemaining()) {   // - запись заполненного буфера
+                code = write();
+                if (code != RC.CODE_SUCCESS)
+                    break;
+            }
+        }
+        if (pool != null)   // - порция скопирована и возвращается в пул
+            pool.release(data);
+        return code;
+    }
+
+    //Запись набора буферов в файл одной собирающей записью
+
+    private RC drain(Batch batch) {
+        int n = 0;
+        long size = 0;  // - общий объем записываемых данных
+        for (int i = 0; i < batch.queuedNum; i++) {
+            batch.gather[n++] = batch.queued[i];
+            size += batch.queued[i].remaining();
+        }
+        batch.buffer.flip();
+        batch.gather[n++] = batch.buffer;
+        size += batch.buffer.remaining();
+        long total = size;  // - объем, освобождаемый в ограничителе
         try {
-            fos.write(buffer, 0, filled);   // - запись
-            filled = 0;   // - обнуление счетчика занятых ячеек
+            if (position >= 0)  // - запись по позиции буферами по очереди, собирающей записи по позиции у канала нет
+                for (int i = 0; i < n; i++)
+                    while (batch.gather[i].hasRemaining())
+                        position += channel.write(batch.gather[i], position);
+            else
+                while (size > 0)    // - запись до полного опустошения всех буферов
+                    size -= channel.write(batch.gather, 0, n);
         } catch (IOException e) { // - обработка исключения
             return RC.CODE_FAILED_TO_WRITE;
+        } finally {
+            batch.buffer.clear();
+            if (governor != null)   // - данные записаны либо потеряны и больше не занимают бюджет
+                governor.release(total);
+        }
+        for (int i = 0; i < batch.queuedNum; i++) {
+            if (pool != null)   // - записанные порции возвращаются в пул
+                pool.release(batch.queued[i]);
+            batch.queued[i] = null;
+            batch.gather[i] = null;
         }
+        batch.queuedNum = 0;
         return RC.CODE_SUCCESS;
     }
+
+    //Запись заполненного набора: сразу либо передачей фоновому потоку в обмен на записанный набор
+
+    public RC write() {
+        if (!isBehind)
+            return drain(batch);
+        if (thread == null) {   // - запуск фонового потока при первой записи
+            thread = new Thread(this, "pipeline-write-behind");
+            thread.setDaemon(true);
+            thread.start();
+        }
+        try {
+            full.put(batch);
+            batch = empty.take();   // - ожидание записи предыдущего набора
+        } catch (InterruptedException e) {
+            return RC.CODE_FAILED_TO_WRITE;
+        }
+        return code;
+    }
+
+    //Запись всех оставшихся данных с ожиданием окончания фоновой записи
+
+    public RC flush() {
+        RC res = write();
+        if (!isBehind)
+            return res;
+        return stop();  // - остановка фонового потока после записи последнего набора
+    }
+
+    //Остановка фонового потока с ожиданием записи переданного ему набора; незаписанные данные не сохраняются
+
+    public RC stop() {
+        if (thread == null)
+            return code;
+        try {
+            full.put(STOP);
+            thread.join();
+        } catch (InterruptedException e) {
+            return RC.CODE_FAILED_TO_WRITE;
+        }
+        thread = null;
+        return code;
+    }
+
+    //Цикл фонового потока записи
+
+    public void run() {
+        while (true) {
+            Batch next;
+            try {
+                next = full.take();
+            } catch (InterruptedException e) {
+                code = RC.CODE_FAILED_TO_WRITE;
+                return;
+            }
+            if (next == STOP)
+                return;
+            RC res = drain(next);
+            if (res != RC.CODE_SUCCESS)
+                code = res;
+            empty.offer(next);
+        }
+    }
 }
 
 //Класс модуля записи данных в файл
 
-public class Writer implements IWriter {
+public class Writer implements IWriter, IMeasurable, IShardable, IGoverned, INegotiated, IThreadedStep {
     private static Logger LOGGER;   // - ссылка на логгер
 
     //Перечисление токенов конфига с вложенным строчным представлением
 
     private enum Tokens {
         SIZE_TO_WRITE("SIZE_TO_WRITE", 1),
-        TYPE("TYPE", 3);
+        TYPE("TYPE", 3),
+        WRITE_MODE("WRITE_MODE", 1, false);
 
         private String title;
         private int valNum;
+        private boolean isRequired; // - признак обязательного токена
 
         Tokens(String title, int valNum) {
+            this(title, valNum, true);
+        }
+
+        Tokens(String title, int valNum, boolean isRequired) {
             this.title = title;
             this.valNum = valNum;
+            this.isRequired = isRequired;
         }
 
         //Метод проверки количества значений для токенов
@@ -87,17 +260,36 @@ public class Writer implements IWriter {
 
     private IProducer producer; // - ссылка на производителя
     private IMediator mediator; // - ссылка на посредника производителя
+    private boolean isPrimitive;    // - признак передачи данных производителем без упаковки
+    private boolean isPacked;   // - признак передачи данных производителем по два байта в элементе
 
     private TYPE[] supportedTypes;  // - массив поддерживаемых этим модулем типов данных
     private TYPE producerType;  // - установленный тип данных для приема от производителя
+    private String negotiation = ""; // - описание выбора типа связи с производителем
 
     private FileOutputStream fos;   // - поток записи
+    private MemoryGovernor governor;    // - ограничитель объема данных в конвейере, null - без ограничения
 
     private String configFileName;  // - имя файла конфига
     private Map<String, Queue<String>> map; // - словарь с содержимым конфига
 
+    //Перечисление режимов записи с их строчным представлением
+
+    private enum WriteMode {
+        SYNC("sync"),
+        BEHIND("behind");
+
+        private String title;
+
+        WriteMode(String title) {
+            this.title = title;
+        }
+    }
+
     private int sizeToWrite;    // - размер буфера для записи
+    private WriteMode writeMode = WriteMode.SYNC;   // - режим записи
     private Buffer buffer;  // - буфер для записи
+    private Metrics.Stage stage = new Metrics().stage("Writer");    // - счетчики модуля
 
     //Конструктор
 
@@ -105,17 +297,18 @@ public class Writer implements IWriter {
         LOGGER = logger;
     }
 
-    //Нахождение пересечения множеств типов производителя и потребителя
+    //Выбор общего типа производителя и потребителя с наименьшей стоимостью передачи
 
     private TYPE setType(TYPE[] types) {
-        TYPE res = null;
-        for (int i = 0; i < producer.getOutputTypes().length; i++)
-            for (int j = 0; j < supportedTypes.length; j++)
-                if (supportedTypes[j].equals(producer.getOutputTypes()[i])) {
-                    res = supportedTypes[j];
-                    break;
-                }
-        return res;
+        List<TYPE> candidates = Converter.negotiate(types, supportedTypes, producer);
+        negotiation = Converter.describe(candidates, producer);
+        return candidates.isEmpty() ? null : candidates.get(0);
+    }
+
+    //Описание выбранного типа и отвергнутых вариантов
+
+    public String getNegotiation() {
+        return negotiation;
     }
 
     //Установка производителя
@@ -131,7 +324,20 @@ public class Writer implements IWriter {
             LOGGER.severe("No intersecting types");
             return RC.CODE_FAILED_PIPELINE_CONSTRUCTION;
         }
-        mediator = producer.getMediator(producerType);
+        isPrimitive = producer instanceof IPrimitiveProducer;
+        isPacked = false;
+        if (producerType != TYPE.BYTE && producer instanceof IPackedProducer) { // - два байта в элементе SHORT или CHAR
+            mediator = ((IPackedProducer) producer).getPackedMediator(producerType);
+            isPacked = mediator != null;
+        }
+        if (isPacked)
+            LOGGER.info("Packed " + producerType + " transport is set");
+        else if (isPrimitive)   // - получение посредника без упаковки при его поддержке производителем
+            mediator = ((IPrimitiveProducer) producer).getPrimitiveMediator(producerType);
+        else
+            mediator = producer.getMediator(producerType);
+        if (isPrimitive)
+            buffer.setPool(((IPrimitiveProducer) producer).getChunkPool());
         LOGGER.info("Producer and Mediator are set successfully");
         return RC.CODE_SUCCESS;
     }
@@ -185,6 +391,17 @@ public class Writer implements IWriter {
                     return RC.CODE_CONFIG_SEMANTIC_ERROR;
                 }
                 break;
+            case WRITE_MODE:    //Установка режима записи
+                String value = queue.remove().toLowerCase();
+                if (value.equals(WriteMode.SYNC.title))
+                    writeMode = WriteMode.SYNC;
+                else if (value.equals(WriteMode.BEHIND.title))
+                    writeMode = WriteMode.BEHIND;
+                else {
+                    LOGGER.severe("Invalid \"" + t.title + "\" value");
+                    return RC.CODE_CONFIG_SEMANTIC_ERROR;
+                }
+                break;
         }
         return RC.CODE_SUCCESS;
     }
@@ -194,6 +411,8 @@ public class Writer implements IWriter {
     private RC dataValidation() {
         for (Tokens t : Tokens.values()) {
             Queue queue = map.get(t.title);
+            if (queue == null)  // - необязательный токен не указан, используется значение по умолчанию
+                continue;
             if (!t.isValNumValid(queue)) {
                 LOGGER.severe("Wrong amount of \"" + t.title + "\" values");
                 return RC.CODE_CONFIG_SEMANTIC_ERROR;
@@ -210,9 +429,13 @@ public class Writer implements IWriter {
 
     private RC readConfig() {
         String[] temp = new String[Tokens.values().length]; // - создание массива текстовых представлений токенов для разбора конфига
-        for (int i = 0; i < Tokens.values().length; i++)
+        int required = 0;   // - количество обязательных токенов
+        for (int i = 0; i < Tokens.values().length; i++) {
             temp[i] = Tokens.values()[i].title;
-        Syntax syntax = new Syntax(LOGGER, temp);   // - создание экземпляра класса синтаксической обработки
+            if (Tokens.values()[i].isRequired)
+                required++;
+        }
+        Syntax syntax = new Syntax(LOGGER, temp, required);   // - создание экземпляра класса синтаксической обработки
         syntax.setConfig(configFileName);   // - чтение и парсинг конфига
         RC code = syntax.readConfig();
         if (code != RC.CODE_SUCCESS)
@@ -222,12 +445,15 @@ public class Writer implements IWriter {
             return code;
         map = syntax.getMap();  // - получение обработанного содержимого конфига
         code = dataValidation();
-        if (code == RC.CODE_SUCCESS)
-            LOGGER.info("\"" + configFileName + "\" config file read successfully");
+        if (code != RC.CODE_SUCCESS)
+            return code;
+        LOGGER.info("\"" + configFileName + "\" config file read successfully");
         buffer = new Buffer();
         code = buffer.setBuffer(sizeToWrite);
         if (code != RC.CODE_SUCCESS)
             return code;
+        if (writeMode == WriteMode.BEHIND)  // - второй набор буферов для отложенной записи
+            code = buffer.setBehind(sizeToWrite);
         return code;
     }
 
@@ -243,56 +469,80 @@ public class Writer implements IWriter {
         return readConfig();
     }
 
+    //Установка набора счетчиков модуля
+
+    public void setMetrics(Metrics.Stage stage) {
+        this.stage = stage;
+    }
+
+    //Установка ограничителя объема данных
+
+    public void setGovernor(MemoryGovernor governor) {
+        this.governor = governor;
+        buffer.setGovernor(governor);
+    }
+
+    //Кратность границ диапазона: модуль записи пишет с любой позиции
+
+    public long getAlignment() {
+        return 1;
+    }
+
+    //Установка позиции записи результата в выходном файле, длина диапазона не ограничивает запись
+
+    public RC setRange(long position, long length) {
+        if (position < 0) {
+            LOGGER.severe("Invalid range");
+            return RC.CODE_INVALID_ARGUMENT;
+        }
+        LOGGER.info("Range is set");
+        return buffer.setPosition(position);
+    }
+
+    //Фоновый поток записи запускается при первой записи набора
+
+    public void start() {
+    }
+
+    //Остановка фонового потока записи: после конца данных он уже остановлен, при ошибке конвейера
+    //менеджер дожидается записи переданного ему набора перед закрытием потока файла
+
+    public RC join() {
+        return buffer.stop();
+    }
+
     //Метод приведения переданных данных к установленному типу
 
-    private byte[] convertBuffer(Object data) {
+    private ByteBuffer convertBuffer(Object data) {
         if (data == null)
             return null;
-        byte[] res = null;
-        switch (producerType) {
-            case BYTE:
-                Byte[] bTemp = (Byte[]) data;
-                res = new byte[bTemp.length];
-                for (int i = 0; i < bTemp.length; i++)
-                    res[i] = bTemp[i].byteValue();
-                break;
-            case SHORT:
-                Short[] sTemp = (Short[]) data;
-                res = new byte[sTemp.length];
-                for (int i = 0; i < sTemp.length; i++)
-                    res[i] = sTemp[i].byteValue();
-                break;
-            case CHAR:
-                Character[] cTemp = (Character[]) data;
-                res = new byte[cTemp.length];
-                for (int i = 0; i < cTemp.length; i++)
-                    res[i] = (byte) cTemp[i].charValue();
-                break;
-        }
-        return res;
+        if (!isPrimitive || producerType != TYPE.BYTE)  // - учет копии, созданной при приведении типа
+            stage.recordAllocations(1);
+        if (isPacked)
+            return Converter.unpack((PackedChunk) data, null);
+        if (isPrimitive)
+            return Converter.toBytes((java.nio.Buffer) data, producerType);
+        return Converter.unbox(data, producerType);
     }
 
     //Метод, выполняющий заполнение буфера и своевременную запись его содержимого в файл
 
     public RC execute() {
-        byte[] data = convertBuffer(mediator.getData());    // - получение порции данных
-        RC code = RC.CODE_SUCCESS;
+        long start = System.nanoTime();
+        ByteBuffer data = convertBuffer(mediator.getData());    // - получение порции данных
         if (data == null) {    // - обработка случая достижения конца файла
             LOGGER.info("Writing the remaining data");
-            return buffer.write();  // - запись оставшихся данных в файл
+            return buffer.flush();  // - запись оставшихся данных в файл с ожиданием фоновой записи
         }
-        LOGGER.info("Saving data into buffer");
-        for (int i = 0; i < data.length; i++) {
-            if (!buffer.add(data[i])) {  // - попытка добавления байта в буфер
-                code = buffer.write();    // - при невозможности запись содержимого буфера в файл
-                if (code != RC.CODE_SUCCESS) {
-                    LOGGER.severe("Couldn't write data to output file");
-                    return code;
-                }
-                LOGGER.info("Writing data from the buffer");
-                LOGGER.info("Saving data into buffer");
-                buffer.add(data[i]);    // - добавление байта в пустой буфер
-            }
+        int size = data.remaining();
+        RC code = buffer.add(data); // - добавление порции, при необходимости с записью в файл
+        if (code == RC.CODE_SUCCESS && governor != null && governor.isPressured())
+            code = buffer.write();  // - накопленные данные записываются сразу, освобождая бюджет для чтения
+        stage.record(size, System.nanoTime() - start);
+        if (code != RC.CODE_SUCCESS) {
+            LOGGER.severe("Couldn't write data to output file");
+            if (governor != null)   // - ожидающее чтение продолжается и получает ошибку от потребителя
+                governor.cancel();
         }
         return code;
     }
@@ -0,0 +1,34 @@
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+//Ядро циклического сдвига на Vector API, сдвигающее сразу столько байтов, сколько помещается в векторный регистр.
+//Требует модуля jdk.incubator.vector, поэтому лежит отдельно от остальных классов и компилируется отдельно:
+//javac --add-modules jdk.incubator.vector -cp <классы конвейера> -d <классы конвейера> vector/VectorShiftKernel.java.
+//Если класс не скомпилирован либо модуль не подключен при запуске (--add-modules jdk.incubator.vector),
+//используются скалярные ядра
+
+class VectorShiftKernel extends ShiftKernel {
+    private final static VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;    // - предпочтительная ширина вектора
+
+    private final ShiftKernel.Table tail;   // - ядро для остатка, не кратного ширине вектора
+
+    //Конструктор
+
+    VectorShiftKernel(int rotation) {
+        super(rotation);
+        tail = new ShiftKernel.Table(rotation);
+    }
+
+    public void shift(byte[] data, int from, int to) {
+        int i = from;
+        int bound = from + SPECIES.loopBound(to - from);
+        for (; i < bound; i += SPECIES.length())
+            ByteVector.fromArray(SPECIES, data, i).lanewise(VectorOperators.ROL, rotation).intoArray(data, i);
+        tail.shift(data, i, to);
+    }
+
+    public String getName() {
+        return "vector" + SPECIES.length();
+    }
+}